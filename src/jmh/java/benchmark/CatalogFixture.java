@@ -0,0 +1,9 @@
+package benchmark;
+
+public interface CatalogFixture {
+    void setUp(int catalogSize);
+
+    Object lookupProduct();
+
+    long lookupPrice();
+}
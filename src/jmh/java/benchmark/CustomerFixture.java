@@ -0,0 +1,9 @@
+package benchmark;
+
+public interface CustomerFixture {
+    // layout: "objects" (ett Customer-objekt per kund), "store" (CustomerStore på heapen) eller "offHeap"
+    void setUp(int customerCount, String layout);
+
+    // Läser in alla kunder och returnerar det som håller dem vid liv
+    Object load();
+}
@@ -0,0 +1,58 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.TimeUnit;
+
+// Heapen som en inläsning av hela kundregistret tar, per kund, med ett objekt per kund och med CustomerStore.
+// Tiden är inläsningen; heapBytesPerCustomer är skillnaden i använd heap efter GC, före och efter inläsningen.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1) // Räknarna summeras över iterationerna, så en mätning ger värdet för en inläsning
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CustomerStoreBenchmark {
+    @Param({"1000000"})
+    public int customerCount;
+
+    @Param({"objects", "store", "offHeap"})
+    public String layout;
+
+    private CustomerFixture fixture;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long heapBytesPerCustomer;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            heapBytesPerCustomer = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("CustomerStoreBenchmarkFixture", CustomerFixture.class);
+        fixture.setUp(customerCount, layout);
+    }
+
+    @Benchmark
+    public Object load(Footprint footprint) {
+        long before = usedHeapAfterGc();
+        Object customers = fixture.load();
+        footprint.heapBytesPerCustomer = (usedHeapAfterGc() - before) / customerCount;
+        Reference.reachabilityFence(customers); // Kunderna ska finnas kvar när heapen mäts
+        return customers;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
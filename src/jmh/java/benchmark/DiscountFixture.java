@@ -0,0 +1,18 @@
+package benchmark;
+
+public interface DiscountFixture {
+    // targeted: rabatterna riktas mot enskilda produkter i stället för att gälla alla
+    void setUp(int basketSize, int discountCount, boolean targeted);
+
+    // Summan av bästa pris för varje produkt i korgen
+    double applyBestDiscountToBasket();
+
+    // Summan av billigaste tillåtna radpris för tre enheter av varje produkt, med stapelbara och exklusiva kampanjer
+    double applyBestDiscountStacked();
+
+    // Summan av radpriset för tre enheter av varje produkt med alla rabatter kedjade, via den kompilerade planen
+    double applyAllDiscountsToBasket();
+
+    // Samma beräkning med virtuella anrop på rabattobjekten, som DiscountManager gjorde före prisplanen
+    double applyAllDiscountsObjectGraph();
+}
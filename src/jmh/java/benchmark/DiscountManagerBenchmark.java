@@ -0,0 +1,51 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Mäter prissättning av en hel korg via DiscountManager
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscountManagerBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int basketSize;
+
+    @Param({"0", "10", "100", "1000"})
+    public int discountCount;
+
+    @Param({"false", "true"})
+    public boolean targeted;
+
+    private DiscountFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("DiscountManagerBenchmarkFixture", DiscountFixture.class);
+        fixture.setUp(basketSize, discountCount, targeted);
+    }
+
+    @Benchmark
+    public double applyBestDiscount() {
+        return fixture.applyBestDiscountToBasket();
+    }
+
+    @Benchmark
+    public double applyBestDiscountStacked() {
+        return fixture.applyBestDiscountStacked();
+    }
+
+    @Benchmark
+    public double applyAllDiscounts() {
+        return fixture.applyAllDiscountsToBasket();
+    }
+
+    @Benchmark
+    public double applyAllDiscountsObjectGraph() {
+        return fixture.applyAllDiscountsObjectGraph();
+    }
+}
@@ -0,0 +1,17 @@
+package benchmark;
+
+// Kassans klasser ligger i default-paketet, som JMH inte tillåter och som inte kan importeras härifrån.
+// Benchmarks laddar därför sin fixture (som ligger i default-paketet) en gång per trial via namn;
+// själva mätningen går sedan via ett vanligt, monomorft interface-anrop.
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static <T> T create(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Kunde inte skapa fixture " + className, e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package benchmark;
+
+import java.io.IOException;
+
+public interface JournalFixture {
+    void setUp(int basketSize, int batchSize) throws IOException;
+
+    // Ett kvitto via journalen (gruppcommit)
+    void appendToJournal() throws IOException;
+
+    // Ett kvitto via Receipt.saveReceiptToFile (öppna, skriv, stäng per kvitto)
+    void saveToFile();
+
+    void tearDown() throws IOException;
+}
@@ -0,0 +1,10 @@
+package benchmark;
+
+public interface MembershipFixture {
+    void setUp(int memberCount);
+
+    // Uppslag på telefonnummer som kassan skriver det, med bindestreck och mellanslag
+    Object findByPhoneNumber();
+
+    Object findByEmail();
+}
@@ -0,0 +1,35 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Medlemsuppslag i början av ett köp, för register upp till fem miljoner medlemmar
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MembershipRegistryBenchmark {
+    @Param({"10000", "1000000", "5000000"})
+    public int memberCount;
+
+    private MembershipFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("MembershipRegistryBenchmarkFixture", MembershipFixture.class);
+        fixture.setUp(memberCount);
+    }
+
+    @Benchmark
+    public Object findByPhoneNumber() {
+        return fixture.findByPhoneNumber();
+    }
+
+    @Benchmark
+    public Object findByEmail() {
+        return fixture.findByEmail();
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Mäter de minsta byggstenarna: addition, valutakonvertering och växel
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+    private MoneyFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("MoneyBenchmarkFixture", MoneyFixture.class);
+        fixture.setUp();
+    }
+
+    @Benchmark
+    public Object addSameCurrency() {
+        return fixture.addSameCurrency();
+    }
+
+    @Benchmark
+    public Object addWithConversion() {
+        return fixture.addWithConversion();
+    }
+
+    @Benchmark
+    public Object convertToCurrency() {
+        return fixture.convertToCurrency();
+    }
+
+    @Benchmark
+    public double currencyConvertTo() {
+        return fixture.currencyConvertTo();
+    }
+
+    @Benchmark
+    public long changeInto() {
+        return fixture.changeInto();
+    }
+}
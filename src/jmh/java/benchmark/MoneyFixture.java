@@ -0,0 +1,16 @@
+package benchmark;
+
+public interface MoneyFixture {
+    void setUp();
+
+    Object addSameCurrency();
+
+    Object addWithConversion();
+
+    Object convertToCurrency();
+
+    double currencyConvertTo();
+
+    // Växel i sedlar och mynt till en återanvänd array
+    long changeInto();
+}
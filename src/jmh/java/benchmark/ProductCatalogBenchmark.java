@@ -0,0 +1,35 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Streckkodsuppslag, det första steget i varje skanning, för kataloger upp till fem miljoner artiklar
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProductCatalogBenchmark {
+    @Param({"10000", "1000000", "5000000"})
+    public int catalogSize;
+
+    private CatalogFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("ProductCatalogBenchmarkFixture", CatalogFixture.class);
+        fixture.setUp(catalogSize);
+    }
+
+    @Benchmark
+    public Object lookupProduct() {
+        return fixture.lookupProduct();
+    }
+
+    @Benchmark
+    public long lookupPrice() {
+        return fixture.lookupPrice();
+    }
+}
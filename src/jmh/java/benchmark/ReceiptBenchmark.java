@@ -0,0 +1,48 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Mäter kassaflödet för ett kvitto: totalsumma och kvittotext för olika korgstorlekar och antal rabatter
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int basketSize;
+
+    @Param({"0", "10", "100", "1000"})
+    public int discountCount;
+
+    private ReceiptFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = Fixtures.create("ReceiptBenchmarkFixture", ReceiptFixture.class);
+        fixture.setUp(basketSize, discountCount);
+    }
+
+    @Benchmark
+    public double calculateTotal() {
+        return fixture.calculateTotal();
+    }
+
+    @Benchmark
+    public String generateReceiptContent() {
+        return fixture.generateReceiptContent();
+    }
+
+    @Benchmark
+    public int renderToBuffer() {
+        return fixture.renderToBuffer();
+    }
+
+    @Benchmark
+    public double scanAndReadTotal() {
+        return fixture.scanAndReadTotal();
+    }
+}
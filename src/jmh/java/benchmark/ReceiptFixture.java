@@ -0,0 +1,15 @@
+package benchmark;
+
+public interface ReceiptFixture {
+    void setUp(int basketSize, int discountCount);
+
+    double calculateTotal();
+
+    String generateReceiptContent();
+
+    // Rendera kvittot från grunden rakt in i en återanvänd ByteBuffer; returnerar antal skrivna byte
+    int renderToBuffer();
+
+    // Lägg till en vara, läs av totalen som kassadisplayen gör och ta bort varan igen
+    double scanAndReadTotal();
+}
@@ -0,0 +1,44 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Jämför kostnaden per sparat kvitto: journal med gruppcommit mot en fil per kvitto
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiptJournalBenchmark {
+    @Param({"10"})
+    public int basketSize;
+
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    private JournalFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = Fixtures.create("ReceiptJournalBenchmarkFixture", JournalFixture.class);
+        fixture.setUp(basketSize, batchSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.tearDown();
+    }
+
+    @Benchmark
+    public void appendToJournal() throws IOException {
+        fixture.appendToJournal();
+    }
+
+    @Benchmark
+    public void saveToFile() {
+        fixture.saveToFile();
+    }
+}
@@ -0,0 +1,34 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// Gemensam testdata för benchmarks så att alla mäter mot samma korgar och rabatter
+final class BenchmarkData {
+    static final java.util.Currency SEK = java.util.Currency.getInstance("SEK");
+    static final Product PRODUCT = new Product("Kaffe", new Money(49.90, SEK));
+
+    private BenchmarkData() {
+    }
+
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(new Product("Produkt " + i, new Money(10 + (i % 90) + 0.95, SEK)));
+        }
+        return products;
+    }
+
+    // Blandning av procent-, belopps- och "köp X betala för Y"-rabatter, alla giltiga under körningen
+    static List<Discount> discounts(int count) {
+        Date validUntil = new Date(System.currentTimeMillis() + 86_400_000L);
+        List<Discount> discounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            switch (i % 3) {
+                case 0 -> discounts.add(new SimpleDiscount(1 + (i % 30), true, validUntil));
+                case 1 -> discounts.add(new SimpleDiscount(1 + (i % 5), false, validUntil));
+                default -> discounts.add(new BuyXGetYDiscount(2, 1, validUntil));
+            }
+        }
+        return discounts;
+    }
+}
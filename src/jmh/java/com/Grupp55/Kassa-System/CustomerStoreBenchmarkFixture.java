@@ -0,0 +1,56 @@
+import benchmark.CustomerFixture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CustomerStoreBenchmarkFixture implements CustomerFixture {
+    private int customerCount;
+    private String layout;
+
+    @Override
+    public void setUp(int customerCount, String layout) {
+        if (!layout.equals("objects") && !layout.equals("store") && !layout.equals("offHeap")) {
+            throw new IllegalArgumentException("Okänd layout: " + layout);
+        }
+        this.customerCount = customerCount;
+        this.layout = layout;
+    }
+
+    @Override
+    public Object load() {
+        if (layout.equals("objects")) {
+            List<Customer> customers = new ArrayList<>(customerCount);
+            for (int i = 0; i < customerCount; i++) {
+                customers.add(new Customer(name(i), address(i), personalId(i), phoneNumber(i), email(i)));
+            }
+            return customers;
+        }
+        CustomerStore store = new CustomerStore(customerCount, layout.equals("offHeap"));
+        for (int i = 0; i < customerCount; i++) {
+            store.add(name(i), address(i), personalId(i), phoneNumber(i), email(i));
+        }
+        store.compact();
+        return store;
+    }
+
+    // Ungefär 95 byte text per kund, som ett verkligt kundregister
+    private static String name(int i) {
+        return "Kund Nummer " + i + " Andersson";
+    }
+
+    private static String address(int i) {
+        return "Storgatan " + (i % 200 + 1) + ", 123 45 Stockholm";
+    }
+
+    private static String personalId(int i) {
+        return String.format("19%010d", i);
+    }
+
+    private static String phoneNumber(int i) {
+        return String.format("070%07d", i);
+    }
+
+    private static String email(int i) {
+        return "kund" + i + "@example.com";
+    }
+}
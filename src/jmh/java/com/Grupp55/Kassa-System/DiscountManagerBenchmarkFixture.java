@@ -0,0 +1,82 @@
+import benchmark.DiscountFixture;
+
+import java.util.List;
+
+public class DiscountManagerBenchmarkFixture implements DiscountFixture {
+    private static final int QUANTITY = 3;
+
+    private DiscountManager manager;
+    private DiscountManager stackedManager;
+    private List<Product> products;
+    private List<Discount> discounts;
+
+    @Override
+    public void setUp(int basketSize, int discountCount, boolean targeted) {
+        manager = new DiscountManager();
+        products = BenchmarkData.products(basketSize);
+        List<Product> targets = targeted ? BenchmarkData.products(discountCount) : null;
+        discounts = BenchmarkData.discounts(discountCount);
+        for (int i = 0; i < discounts.size(); i++) {
+            if (targeted) {
+                // Var tionde kampanj gäller en vara i korgen, resten gäller varor som inte skannas
+                Product target = i % 10 == 0 && !products.isEmpty() ? products.get(i % products.size()) : targets.get(i);
+                discounts.get(i).setTargetProduct(target);
+            }
+            manager.addDiscount(discounts.get(i));
+        }
+
+        // Samma kampanjer med staplingspolicy: två av tre är stapelbara, i åtta exklusiva grupper och tre prioriteter
+        stackedManager = new DiscountManager();
+        List<Discount> stacked = BenchmarkData.discounts(discountCount);
+        for (int i = 0; i < stacked.size(); i++) {
+            Discount discount = stacked.get(i);
+            discount.setTargetProduct(discounts.get(i).getTargetProduct());
+            discount.setStackable(i % 3 != 0);
+            discount.setExclusiveGroup(i % 2 == 0 ? "grupp" + i % 8 : null);
+            discount.setPriority(i % 3);
+            stackedManager.addDiscount(discount);
+        }
+    }
+
+    @Override
+    public double applyBestDiscountToBasket() {
+        double sum = 0;
+        for (Product product : products) {
+            sum += manager.applyBestDiscount(product);
+        }
+        return sum;
+    }
+
+    @Override
+    public double applyBestDiscountStacked() {
+        double sum = 0;
+        for (Product product : products) {
+            sum += stackedManager.applyBestDiscount(product, QUANTITY);
+        }
+        return sum;
+    }
+
+    @Override
+    public double applyAllDiscountsToBasket() {
+        double sum = 0;
+        for (Product product : products) {
+            sum += manager.applyAllDiscounts(product, product.getPrice().getAmount(), QUANTITY);
+        }
+        return sum;
+    }
+
+    @Override
+    public double applyAllDiscountsObjectGraph() {
+        double sum = 0;
+        for (Product product : products) {
+            double amount = product.getPrice().getAmount() * QUANTITY;
+            for (Discount discount : discounts) {
+                if (discount.isApplicable(product)) {
+                    amount = discount.applyDiscount(amount / QUANTITY, QUANTITY);
+                }
+            }
+            sum += amount;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,39 @@
+import benchmark.MembershipFixture;
+
+import java.util.Random;
+
+public class MembershipRegistryBenchmarkFixture implements MembershipFixture {
+    private static final int LOOKUPS = 4096; // tvåpotens, så att nästa nyckel kan väljas med en mask
+
+    private MembershipRegistry registry;
+    private String[] phoneNumbers;
+    private String[] emails;
+    private int next;
+
+    @Override
+    public void setUp(int memberCount) {
+        registry = new MembershipRegistry(64, memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            registry.register(new Membership(new Customer("Medlem " + i, "Storgatan 1", String.format("19%010d", i),
+                    String.format("070%07d", i), "medlem" + i + "@example.com")));
+        }
+        Random random = new Random(42);
+        phoneNumbers = new String[LOOKUPS];
+        emails = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String digits = String.format("%07d", random.nextInt(memberCount));
+            phoneNumbers[i] = "070-" + digits.substring(0, 3) + " " + digits.substring(3, 5) + " " + digits.substring(5);
+            emails[i] = "Medlem" + Integer.parseInt(digits) + "@Example.com";
+        }
+    }
+
+    @Override
+    public Object findByPhoneNumber() {
+        return registry.findByPhoneNumber(phoneNumbers[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Override
+    public Object findByEmail() {
+        return registry.findByEmail(emails[next++ & (LOOKUPS - 1)]);
+    }
+}
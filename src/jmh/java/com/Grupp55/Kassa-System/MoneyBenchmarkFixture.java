@@ -0,0 +1,47 @@
+import benchmark.MoneyFixture;
+
+public class MoneyBenchmarkFixture implements MoneyFixture {
+    private final java.util.Currency sek = java.util.Currency.getInstance("SEK");
+    private final java.util.Currency usd = java.util.Currency.getInstance("USD");
+
+    private Money sekMoney;
+    private Money otherSekMoney;
+    private Money usdMoney;
+    private double amount;
+    private Money change;
+    private final int[] counts = new int[16];
+
+    @Override
+    public void setUp() {
+        sekMoney = new Money(123.45, sek);
+        otherSekMoney = new Money(10.55, sek);
+        usdMoney = new Money(9.99, usd);
+        amount = 123.45;
+        change = new Money(1287.50, sek);
+    }
+
+    @Override
+    public Object addSameCurrency() {
+        return sekMoney.add(otherSekMoney);
+    }
+
+    @Override
+    public Object addWithConversion() {
+        return sekMoney.add(usdMoney);
+    }
+
+    @Override
+    public Object convertToCurrency() {
+        return sekMoney.convertToCurrency(usd);
+    }
+
+    @Override
+    public double currencyConvertTo() {
+        return Currency.SEK.convertTo(amount, Currency.USD);
+    }
+
+    @Override
+    public long changeInto() {
+        return change.changeInto(counts) + counts[0];
+    }
+}
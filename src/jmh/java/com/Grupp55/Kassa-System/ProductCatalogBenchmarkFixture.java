@@ -0,0 +1,38 @@
+import benchmark.CatalogFixture;
+
+import java.util.Random;
+
+public class ProductCatalogBenchmarkFixture implements CatalogFixture {
+    private static final long FIRST_BARCODE = 7_310_000_000_000L;
+    private static final int LOOKUPS = 4096; // tvåpotens, så att nästa streckkod kan väljas med en mask
+
+    private ProductCatalog catalog;
+    private long[] barcodes;
+    private int next;
+
+    @Override
+    public void setUp(int catalogSize) {
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        catalog = new ProductCatalog(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            catalog.add(FIRST_BARCODE + i * 7L, "Artikel " + (i % 1000), Money.ofMinorUnits(100 + i % 10_000, sek));
+        }
+        // Slumpade streckkoder, så att mätningen inte bara träffar samma cachelinjer
+        Random random = new Random(42);
+        barcodes = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            barcodes[i] = FIRST_BARCODE + random.nextInt(catalogSize) * 7L;
+        }
+    }
+
+    @Override
+    public Object lookupProduct() {
+        return catalog.lookup(barcodes[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Override
+    public long lookupPrice() {
+        int slot = catalog.slotOf(barcodes[next++ & (LOOKUPS - 1)]);
+        return catalog.getPriceMinorUnits(slot);
+    }
+}
@@ -0,0 +1,45 @@
+import benchmark.ReceiptFixture;
+
+import java.nio.ByteBuffer;
+
+public class ReceiptBenchmarkFixture implements ReceiptFixture {
+    private Receipt receipt;
+    private final ReceiptRenderer renderer = new ReceiptRenderer();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+
+    @Override
+    public void setUp(int basketSize, int discountCount) {
+        receipt = new Receipt();
+        for (Product product : BenchmarkData.products(basketSize)) {
+            receipt.addProduct(product);
+        }
+        for (Discount discount : BenchmarkData.discounts(discountCount)) {
+            receipt.addDiscount(discount);
+        }
+    }
+
+    @Override
+    public double calculateTotal() {
+        return receipt.calculateTotal();
+    }
+
+    @Override
+    public String generateReceiptContent() {
+        return receipt.generateReceiptContent();
+    }
+
+    @Override
+    public int renderToBuffer() {
+        buffer.clear();
+        renderer.render(receipt, buffer);
+        return buffer.position();
+    }
+
+    @Override
+    public double scanAndReadTotal() {
+        receipt.addProduct(BenchmarkData.PRODUCT);
+        double total = receipt.calculateTotal();
+        receipt.removeProduct(BenchmarkData.PRODUCT);
+        return total;
+    }
+}
@@ -0,0 +1,50 @@
+import benchmark.JournalFixture;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class ReceiptJournalBenchmarkFixture implements JournalFixture {
+    private Path directory;
+    private ReceiptJournal journal;
+    private Receipt receipt;
+    private String file;
+    private PrintStream originalOut;
+
+    @Override
+    public void setUp(int basketSize, int batchSize) throws IOException {
+        directory = Files.createTempDirectory("kvittojournal");
+        journal = new ReceiptJournal(directory, "bench", batchSize, 1_000, ReceiptJournal.DEFAULT_MAX_SEGMENT_BYTES);
+        receipt = new Receipt();
+        for (Product product : BenchmarkData.products(basketSize)) {
+            receipt.addProduct(product);
+        }
+        file = directory.resolve("kvitto.txt").toString();
+        // saveReceiptToFile skriver en rad till System.out per kvitto, vilket inte ska mätas
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Override
+    public void appendToJournal() throws IOException {
+        journal.append(receipt);
+    }
+
+    @Override
+    public void saveToFile() {
+        receipt.saveReceiptToFile(file);
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        System.setOut(originalOut);
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
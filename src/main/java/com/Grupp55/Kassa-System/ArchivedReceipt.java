@@ -0,0 +1,74 @@
+import java.util.Date;
+
+// Ett kvitto som lästs tillbaka ur ett ReceiptArchive. Belopp är i minsta enhet (öre/cent).
+public class ArchivedReceipt {
+    private final long number;
+    private final long timestamp;
+    private final String currencyCode;
+    private final long totalMinorUnits;
+    private final String[] productNames;
+    private final String[] priceCurrencyCodes;
+    private final int[] quantities;
+    private final long[] unitPrices;
+    private final long[] linePrices;
+
+    ArchivedReceipt(long number, long timestamp, String currencyCode, long totalMinorUnits, String[] productNames,
+                    String[] priceCurrencyCodes, int[] quantities, long[] unitPrices, long[] linePrices) {
+        this.number = number;
+        this.timestamp = timestamp;
+        this.currencyCode = currencyCode;
+        this.totalMinorUnits = totalMinorUnits;
+        this.productNames = productNames;
+        this.priceCurrencyCodes = priceCurrencyCodes;
+        this.quantities = quantities;
+        this.unitPrices = unitPrices;
+        this.linePrices = linePrices;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public Date getDate() {
+        return new Date(timestamp);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public java.util.Currency getCurrency() {
+        return java.util.Currency.getInstance(currencyCode);
+    }
+
+    public long getTotalMinorUnits() {
+        return totalMinorUnits;
+    }
+
+    public int getLineCount() {
+        return productNames.length;
+    }
+
+    public String getProductName(int line) {
+        return productNames[line];
+    }
+
+    // Valutan som styckpriset är angivet i
+    public java.util.Currency getPriceCurrency(int line) {
+        return java.util.Currency.getInstance(priceCurrencyCodes[line]);
+    }
+
+    public int getQuantity(int line) {
+        return quantities[line];
+    }
+
+    // Styckpris före rabatt, i produktens valuta
+    public long getUnitPrice(int line) {
+        return unitPrices[line];
+    }
+
+    // Radens rabatterade pris, i produktens valuta
+    public long getLinePrice(int line) {
+        return linePrices[line];
+    }
+}
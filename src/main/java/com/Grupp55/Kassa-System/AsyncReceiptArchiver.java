@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Sparar avslutade kvitton i bakgrunden så att kassan inte väntar på disken.
+// Kvitton läggs i en begränsad kö som töms av skrivtrådar; är kön full väntar submit (mottryck)
+// eller så ger trySubmit upp efter en tidsgräns. Misslyckade skrivningar görs om med ökande väntetid.
+// Varje kvitto ger en CompletableFuture som kassan kan vänta på om den vill.
+//
+// Ett nytt försök skriver samma kvitto igen, så mottagaren måste lämna filen orörd när en skrivning misslyckas;
+// annars kan kvittot hamna där två gånger. ReceiptJournal.append rullar tillbaka en misslyckad skrivning, och
+// ReceiptArchiveWriter.appendAndSync tar inte emot fler kvitton efter ett fel, så båda går att använda här.
+//
+// Med en skrivtråd (standard) skrivs kvitton i den ordning de lämnades in. Trådarna skapas av
+// threadFactory, så på Java 21 kan t.ex. Thread.ofVirtual().factory() användas.
+//
+// submit lägger kvitton i kön under läslåset och close stänger under skrivlåset, så inget kvitto kan hamna
+// i kön efter att close har börjat. Kvitton som ändå ligger kvar när skrivtrådarna stoppats (t.ex. om close
+// avbryts) markeras som misslyckade, så att ingen väntar på dem i onödan.
+public class AsyncReceiptArchiver implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 100;
+
+    private static final Task STOP = new Task(null, null);
+
+    private final ReceiptSink sink;
+    private final BlockingQueue<Task> queue;
+    private final int maxAttempts;
+    private final long retryDelayMillis;
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ReadWriteLock state = new ReentrantReadWriteLock();
+    private boolean closed; // Skyddas av state
+
+    public AsyncReceiptArchiver(ReceiptSink sink) {
+        this(sink, DEFAULT_CAPACITY, 1, DEFAULT_MAX_ATTEMPTS, DEFAULT_RETRY_DELAY_MILLIS, daemonThreads());
+    }
+
+    public AsyncReceiptArchiver(ReceiptSink sink, int capacity, int workerCount, int maxAttempts, long retryDelayMillis, ThreadFactory threadFactory) {
+        if (capacity < 1 || workerCount < 1 || maxAttempts < 1 || retryDelayMillis < 0) {
+            throw new IllegalArgumentException("Ogiltig konfiguration för kvittoarkivering");
+        }
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxAttempts = maxAttempts;
+        this.retryDelayMillis = retryDelayMillis;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = threadFactory.newThread(this::drain);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    // Lämnar in en kopia av kvittot; väntar om kön är full
+    public CompletableFuture<Void> submit(Receipt receipt) throws InterruptedException {
+        state.readLock().lockInterruptibly();
+        try {
+            Task task = newTask(receipt);
+            queue.put(task);
+            return task.completion;
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    // Som submit men ger upp och returnerar null om kön fortfarande är full efter timeout
+    public CompletableFuture<Void> trySubmit(Receipt receipt, long timeout, TimeUnit unit) throws InterruptedException {
+        state.readLock().lockInterruptibly();
+        try {
+            Task task = newTask(receipt);
+            return queue.offer(task, timeout, unit) ? task.completion : null;
+        } finally {
+            state.readLock().unlock();
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    // Tar inte emot fler kvitton, skriver klart de som väntar och stoppar skrivtrådarna.
+    // Avbryts väntan slutar close vänta, markerar kvarvarande kvitton som misslyckade och behåller avbrottet.
+    @Override
+    public void close() {
+        state.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            state.writeLock().unlock();
+        }
+        boolean interrupted = false;
+        try {
+            int stops = 0;
+            while (stops < workers.size() && anyWorkerAlive()) {
+                if (queue.offer(STOP, 10, TimeUnit.MILLISECONDS)) {
+                    stops++;
+                }
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        for (Task task; (task = queue.poll()) != null; ) {
+            if (task != STOP) {
+                task.completion.completeExceptionally(new IllegalStateException("Kvittoarkiveringen stängdes innan kvittot skrevs"));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean anyWorkerAlive() {
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Anropas med läslåset
+    private Task newTask(Receipt receipt) {
+        if (closed) {
+            throw new IllegalStateException("Kvittoarkiveringen är stängd");
+        }
+        // Kopian gör att kassan direkt kan återanvända kvittot med endPurchase()
+        return new Task(receipt.snapshot(), new CompletableFuture<>());
+    }
+
+    private void drain() {
+        while (true) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                continue; // Trådarna stoppas bara med STOP, så att inga kvitton blir kvar i kön
+            }
+            if (task == STOP) {
+                return;
+            }
+            write(task);
+        }
+    }
+
+    private void write(Task task) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.write(task.receipt);
+                written.incrementAndGet();
+                task.completion.complete(null);
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    failed.incrementAndGet();
+                    System.err.println("Kunde inte arkivera kvitto efter " + attempt + " försök: " + e.getMessage());
+                    task.completion.completeExceptionally(e);
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(retryDelayMillis * attempt);
+            } catch (InterruptedException e) {
+                // Ett avbrott under väntan ger upp detta kvitto, men skrivtråden fortsätter med nästa
+                failed.incrementAndGet();
+                task.completion.completeExceptionally(e);
+                return;
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "kvittoarkiv-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Task {
+        final Receipt receipt;
+        final CompletableFuture<Void> completion;
+
+        Task(Receipt receipt, CompletableFuture<Void> completion) {
+            this.receipt = receipt;
+            this.completion = completion;
+        }
+    }
+}
@@ -10,8 +10,24 @@ public class BuyXGetYDiscount extends Discount {
         this.discountQuantity = discountQuantity;
     }
 
+    // Genomsnittligt pris per enhet när hela "köp X få Y"-omgångar köps
     @Override
     public double applyDiscount(double price) {
         return price * requiredQuantity / (requiredQuantity + discountQuantity);
     }
+
+    // Radpris där Y enheter är gratis för varje fullständig omgång om X + Y enheter
+    @Override
+    public double applyDiscount(double unitPrice, int quantity) {
+        int freeUnits = quantity / (requiredQuantity + discountQuantity) * discountQuantity;
+        return unitPrice * (quantity - freeUnits);
+    }
+
+    public int getRequiredQuantity() {
+        return requiredQuantity;
+    }
+
+    public int getDiscountQuantity() {
+        return discountQuantity;
+    }
 }
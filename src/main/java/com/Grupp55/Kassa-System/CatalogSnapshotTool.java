@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Gör om en CSV-export av sortimentet till en katalogfil som MappedCatalog kan minnesmappa.
+// CSV: "streckkod,namn,pris,valuta" per rad, t.ex. "7310865004703,Mellanmjölk 1,5 l,18.90,SEK".
+// Namnet får innehålla avgränsaren eftersom första och de två sista fälten läses från radens ändar.
+// Semikolon kan användas som avgränsare, och rader som börjar med # och en rubrikrad hoppas över.
+//
+// Användning: java CatalogSnapshotTool sortiment.csv katalog.bin
+public class CatalogSnapshotTool {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Användning: java CatalogSnapshotTool <sortiment.csv> <katalog.bin>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        int count = convert(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Skrev " + count + " artiklar till " + args[1] + " på " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Läser CSV-filen och skriver katalogfilen; returnerar antal artiklar
+    public static int convert(Path csvFile, Path snapshotFile) throws IOException {
+        ProductCatalog catalog = readCsv(csvFile);
+        write(catalog, snapshotFile);
+        return catalog.size();
+    }
+
+    public static ProductCatalog readCsv(Path csvFile) throws IOException {
+        ProductCatalog catalog = new ProductCatalog();
+        java.util.Map<String, String> names = new java.util.HashMap<>(); // Lika namn delar en String, bara under inläsningen
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                char separator = line.indexOf(';') >= 0 ? ';' : ',';
+                int first = line.indexOf(separator);
+                int last = line.lastIndexOf(separator);
+                int secondLast = last > 0 ? line.lastIndexOf(separator, last - 1) : -1;
+                if (first < 0 || secondLast <= first) {
+                    throw new IOException("Ogiltig rad " + lineNumber + " i sortimentsfil: " + line);
+                }
+                String barcode = line.substring(0, first).strip();
+                if (lineNumber == 1 && barcode.equalsIgnoreCase("streckkod")) {
+                    continue; // Rubrikrad
+                }
+                try {
+                    java.util.Currency currency = java.util.Currency.getInstance(line.substring(last + 1).strip());
+                    // BigDecimal ger exakt pris i minsta enhet, även för t.ex. 0.29 som inte kan lagras exakt som double
+                    long price = new BigDecimal(line.substring(secondLast + 1, last).strip().replace(',', '.'))
+                            .movePointRight(Math.max(currency.getDefaultFractionDigits(), 0)).longValueExact();
+                    catalog.add(Long.parseLong(barcode), names.computeIfAbsent(line.substring(first + 1, secondLast).strip(), n -> n),
+                            Money.ofMinorUnits(price, currency));
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    throw new IOException("Ogiltig rad " + lineNumber + " i sortimentsfil: " + line, e);
+                }
+            }
+        }
+        return catalog;
+    }
+
+    // Skriver katalogen till en temporär fil som sedan byter namn, så att en kassa aldrig mappar en halvskriven fil
+    public static void write(ProductCatalog catalog, Path snapshotFile) throws IOException {
+        int count = catalog.size();
+        int tableSize = ProductCatalog.tableSizeFor(Math.max(count, 1));
+
+        List<java.util.Currency> currencies = new ArrayList<>();
+        Map<java.util.Currency, Integer> currencyIndex = new HashMap<>();
+        Map<String, Integer> nameOffsets = new HashMap<>();
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        int[] nameOffset = new int[count];
+        int[] nameLength = new int[count];
+        short[] currency = new short[count];
+        for (int slot = 0; slot < count; slot++) {
+            java.util.Currency slotCurrency = catalog.getCurrency(slot);
+            Integer index = currencyIndex.get(slotCurrency);
+            if (index == null) {
+                index = currencies.size();
+                currencies.add(slotCurrency);
+                currencyIndex.put(slotCurrency, index);
+            }
+            currency[slot] = (short) (int) index;
+            byte[] name = catalog.getName(slot).getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IllegalArgumentException("Produktnamnet är för långt: " + catalog.getName(slot));
+            }
+            nameLength[slot] = name.length;
+            nameOffset[slot] = nameOffsets.computeIfAbsent(catalog.getName(slot), n -> {
+                int offset = names.size();
+                names.write(name, 0, name.length);
+                return offset;
+            });
+        }
+
+        int tableOffset = MappedCatalog.tableOffset(currencies.size());
+        long namesOffset = tableOffset + (long) tableSize * MappedCatalog.SLOT_BYTES + (long) count * MappedCatalog.RECORD_BYTES;
+        if (namesOffset + names.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Katalogen är för stor för en katalogfil: " + count + " artiklar");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) namesOffset);
+        out.putInt(MappedCatalog.MAGIC).putInt(count).putInt(tableSize).putInt(currencies.size());
+        for (java.util.Currency c : currencies) {
+            out.put(c.getCurrencyCode().getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+        }
+
+        // Hashtabellen fylls på samma sätt som ProductCatalog.insert
+        int mask = tableSize - 1;
+        for (int slot = 0; slot < count; slot++) {
+            long barcode = catalog.getBarcode(slot);
+            int i = ProductCatalog.hash(barcode) & mask;
+            while (out.getLong(tableOffset + i * MappedCatalog.SLOT_BYTES) != 0) {
+                i = (i + 1) & mask;
+            }
+            out.putLong(tableOffset + i * MappedCatalog.SLOT_BYTES, barcode);
+            out.putInt(tableOffset + i * MappedCatalog.SLOT_BYTES + 8, slot);
+        }
+
+        out.position(tableOffset + tableSize * MappedCatalog.SLOT_BYTES);
+        for (int slot = 0; slot < count; slot++) {
+            out.putLong(catalog.getBarcode(slot));
+            out.putLong(catalog.getPriceMinorUnits(slot));
+            out.putInt((int) namesOffset + nameOffset[slot]);
+            out.putShort((short) nameLength[slot]);
+            out.putShort(currency[slot]);
+        }
+        out.flip();
+
+        Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            ByteBuffer nameBytes = ByteBuffer.wrap(names.toByteArray());
+            while (nameBytes.hasRemaining()) {
+                channel.write(nameBytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
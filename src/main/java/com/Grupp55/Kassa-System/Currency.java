@@ -1,59 +1,47 @@
-import java.util.HashMap;
-import java.util.Map;
-
 public enum Currency {
     SEK, USD, EUR;
 
-    // En statisk tabell som lagrar växelkurser mellan valutor
-    private static final Map<Currency, Map<Currency, Double>> exchangeRates = new HashMap<>();
-
-    // Initiera växelkurserna
-    static {
-        // SEK-växelkurser
-        Map<Currency, Double> sekRates = new HashMap<>();
-        sekRates.put(USD, 0.11); // 1 SEK = 0.11 USD
-        sekRates.put(EUR, 0.095); // 1 SEK = 0.095 EUR
-        exchangeRates.put(SEK, sekRates);
-
-        // USD-växelkurser
-        Map<Currency, Double> usdRates = new HashMap<>();
-        usdRates.put(SEK, 9.1); // 1 USD = 9.1 SEK
-        usdRates.put(EUR, 0.86); // 1 USD = 0.86 EUR
-        exchangeRates.put(USD, usdRates);
-
-        // EUR-växelkurser
-        Map<Currency, Double> eurRates = new HashMap<>();
-        eurRates.put(SEK, 10.5); // 1 EUR = 10.5 SEK
-        eurRates.put(USD, 1.16); // 1 EUR = 1.16 USD
-        exchangeRates.put(EUR, eurRates);
+    // Motsvarande java.util.Currency och dess löpnummer i CurrencyRegistry, slås upp en gång per valuta
+    private final java.util.Currency currency = java.util.Currency.getInstance(name());
+    private final int index = CurrencyRegistry.register(currency);
+
+    public java.util.Currency getCurrency() {
+        return currency;
     }
 
     // Metod för att konvertera ett belopp från en valuta till en annan
     public double convertTo(double amount, Currency targetCurrency) {
+        return convertTo(amount, targetCurrency, CurrencyRegistry.getExchangeRates());
+    }
+
+    // Konvertera med en fastlåst tabell, t.ex. den som gällde när kvittot prissattes
+    public double convertTo(double amount, Currency targetCurrency, ExchangeRateTable rates) {
         if (this == targetCurrency) {
             return amount; // Ingen konvertering behövs om samma valuta
         }
-
-        Map<Currency, Double> rates = exchangeRates.get(this);
-        if (rates != null && rates.containsKey(targetCurrency)) {
-            return amount * rates.get(targetCurrency); // Konvertera beloppet
-        } else {
-            throw new IllegalArgumentException("Växelkurs ej tillgänglig för " + this + " till " + targetCurrency);
-        }
+        return amount * rateIn(rates, this, targetCurrency); // Konvertera beloppet
     }
 
-    // Metod för att uppdatera en specifik växelkurs
+    // Metod för att uppdatera en specifik växelkurs. Andra trådar ser antingen den gamla eller den nya tabellen.
     public static void setExchangeRate(Currency fromCurrency, Currency toCurrency, double rate) {
-        exchangeRates.computeIfAbsent(fromCurrency, _ -> new HashMap<>()).put(toCurrency, rate); // Fixad varning
+        CurrencyRegistry.setExchangeRate(fromCurrency.currency, toCurrency.currency, rate);
     }
 
     // Metod för att hämta en specifik växelkurs
     public static double getExchangeRate(Currency fromCurrency, Currency toCurrency) {
-        Map<Currency, Double> rates = exchangeRates.get(fromCurrency);
-        if (rates != null && rates.containsKey(toCurrency)) {
-            return rates.get(toCurrency);
-        } else {
+        return rateIn(CurrencyRegistry.getExchangeRates(), fromCurrency, toCurrency);
+    }
+
+    // Ögonblicksbild av alla kurser som de ser ut just nu
+    public static ExchangeRateTable getExchangeRates() {
+        return CurrencyRegistry.getExchangeRates();
+    }
+
+    private static double rateIn(ExchangeRateTable rates, Currency fromCurrency, Currency toCurrency) {
+        double rate = rates.rate(fromCurrency.index, toCurrency.index);
+        if (Double.isNaN(rate)) {
             throw new IllegalArgumentException("Växelkurs ej tillgänglig för " + fromCurrency + " till " + toCurrency);
         }
+        return rate;
     }
 }
@@ -0,0 +1,162 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Gemensamt register över alla valutor som kassan kan växla mellan. Varje valuta får ett fast löpnummer
+// första gången den registreras, och löpnumret används som index i växelkurstabellen.
+// Både Money och Currency slår upp sina kurser här, så att det bara finns en uppsättning kurser.
+public final class CurrencyRegistry {
+    private static final Map<java.util.Currency, Integer> indices = new ConcurrentHashMap<>();
+    private static volatile java.util.Currency[] currencies = new java.util.Currency[0];
+    private static final AtomicReference<ExchangeRateTable> exchangeRates = new AtomicReference<>(ExchangeRateTable.empty(0));
+
+    // Initiera växelkurserna. Valutorna registreras i samma ordning som i Currency, så att löpnummer och ordinal stämmer överens.
+    static {
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        java.util.Currency usd = java.util.Currency.getInstance("USD");
+        java.util.Currency eur = java.util.Currency.getInstance("EUR");
+        setExchangeRate(sek, usd, 0.11); // 1 SEK = 0.11 USD
+        setExchangeRate(sek, eur, 0.095); // 1 SEK = 0.095 EUR
+        setExchangeRate(usd, sek, 9.1); // 1 USD = 9.1 SEK
+        setExchangeRate(usd, eur, 0.86); // 1 USD = 0.86 EUR
+        setExchangeRate(eur, sek, 10.5); // 1 EUR = 10.5 SEK
+        setExchangeRate(eur, usd, 1.16); // 1 EUR = 1.16 USD
+    }
+
+    private CurrencyRegistry() {
+    }
+
+    // Löpnumret för en valuta, registrerar den om den är ny
+    public static int register(java.util.Currency currency) {
+        Integer index = indices.get(currency);
+        if (index != null) {
+            return index;
+        }
+        synchronized (CurrencyRegistry.class) {
+            index = indices.get(currency);
+            if (index != null) {
+                return index;
+            }
+            int newIndex = currencies.length;
+            java.util.Currency[] grown = java.util.Arrays.copyOf(currencies, newIndex + 1);
+            grown[newIndex] = currency;
+            exchangeRates.updateAndGet(table -> table.withSize(grown.length));
+            currencies = grown;
+            indices.put(currency, newIndex);
+            return newIndex;
+        }
+    }
+
+    // Löpnumret för en valuta, eller -1 om den inte är registrerad
+    public static int indexOf(java.util.Currency currency) {
+        Integer index = indices.get(currency);
+        return index == null ? -1 : index;
+    }
+
+    public static java.util.Currency currencyAt(int index) {
+        return currencies[index];
+    }
+
+    public static int size() {
+        return currencies.length;
+    }
+
+    // Ögonblicksbild av alla kurser som de ser ut just nu
+    public static ExchangeRateTable getExchangeRates() {
+        return exchangeRates.get();
+    }
+
+    // Metod för att uppdatera en specifik växelkurs. Andra trådar ser antingen den gamla eller den nya tabellen.
+    public static void setExchangeRate(java.util.Currency fromCurrency, java.util.Currency toCurrency, double rate) {
+        int from = register(fromCurrency);
+        int to = register(toCurrency);
+        exchangeRates.updateAndGet(table -> table.withRate(from, to, rate));
+    }
+
+    // Bygg en komplett korskurstabell från kurser mot en basvaluta, utan att ändra registret.
+    // Kända valutor behåller sina löpnummer; nya får plats efter dem och registreras först när tabellen publiceras.
+    public static ExchangeRateTable fromBaseRates(java.util.Currency base, Map<java.util.Currency, Double> unitsPerBase) {
+        java.util.Currency[] known = currencies;
+        java.util.List<java.util.Currency> layout = new java.util.ArrayList<>(java.util.Arrays.asList(known));
+        Map<java.util.Currency, Integer> local = new java.util.HashMap<>();
+        int baseIndex = localIndex(base, known, layout, local);
+        for (java.util.Currency currency : unitsPerBase.keySet()) {
+            localIndex(currency, known, layout, local);
+        }
+        double[] rates = new double[layout.size()];
+        java.util.Arrays.fill(rates, Double.NaN);
+        rates[baseIndex] = 1.0;
+        for (Map.Entry<java.util.Currency, Double> entry : unitsPerBase.entrySet()) {
+            if (!entry.getKey().equals(base)) {
+                rates[local.get(entry.getKey())] = entry.getValue();
+            }
+        }
+        ExchangeRateTable table = ExchangeRateTable.fromBaseRates(baseIndex, rates);
+        return layout.size() == known.length ? table : table.withLayout(layout.toArray(new java.util.Currency[0]));
+    }
+
+    // Ersätt alla kurser med en ny tabell, t.ex. inläst från fil. Tabellen får en högre version än den gällande.
+    // Valutor som bara finns i tabellens egen layout registreras nu, och kurserna flyttas till deras löpnummer.
+    public static ExchangeRateTable setExchangeRates(ExchangeRateTable table) {
+        java.util.Currency[] layout = table.getLayout();
+        ExchangeRateTable published = table;
+        if (layout != null) {
+            int[] target = new int[layout.length];
+            boolean moved = false;
+            for (int i = 0; i < layout.length; i++) {
+                target[i] = register(layout[i]);
+                moved |= target[i] != i;
+            }
+            published = moved ? table.remap(target, size()) : table.withLayout(null);
+        }
+        ExchangeRateTable registered = published;
+        return exchangeRates.updateAndGet(current -> registered.withSize(currencies.length).withVersion(current.getVersion() + 1));
+    }
+
+    // Metod för att hämta en specifik växelkurs ur en given tabell
+    public static double getExchangeRate(ExchangeRateTable rates, java.util.Currency fromCurrency, java.util.Currency toCurrency) {
+        if (fromCurrency.equals(toCurrency)) {
+            return 1.0;
+        }
+        int from = indexOf(rates, fromCurrency);
+        int to = indexOf(rates, toCurrency);
+        double rate = from < 0 || to < 0 ? Double.NaN : rates.rate(from, to);
+        if (Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Växelkurs ej tillgänglig för " + fromCurrency + " till " + toCurrency);
+        }
+        return rate;
+    }
+
+    public static double getExchangeRate(java.util.Currency fromCurrency, java.util.Currency toCurrency) {
+        return getExchangeRate(exchangeRates.get(), fromCurrency, toCurrency);
+    }
+
+    // Valutans index i tabellen: löpnumret, eller platsen i tabellens egen layout om den inte är publicerad
+    private static int indexOf(ExchangeRateTable rates, java.util.Currency currency) {
+        java.util.Currency[] layout = rates.getLayout();
+        if (layout == null) {
+            return indexOf(currency);
+        }
+        for (int i = 0; i < layout.length; i++) {
+            if (layout[i].equals(currency)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int localIndex(java.util.Currency currency, java.util.Currency[] known, java.util.List<java.util.Currency> layout,
+                                  Map<java.util.Currency, Integer> local) {
+        Integer index = local.get(currency);
+        if (index == null) {
+            Integer registered = indices.get(currency);
+            // Registrerad efter att known lästes räknas som ny, så att den inte får ett index utanför known
+            index = registered != null && registered < known.length ? registered : layout.size();
+            if (index == layout.size()) {
+                layout.add(currency);
+            }
+            local.put(currency, index);
+        }
+        return index;
+    }
+}
@@ -1,9 +1,21 @@
 public class Customer {
+    // Nycklarna som en MembershipRegistry indexerar på
+    public enum Key { PERSONAL_ID, PHONE_NUMBER, EMAIL }
+
+    // Anropas efter att en nyckel har ändrats, så att index kan flytta kunden
+    @FunctionalInterface
+    public interface KeyListener {
+        void keyChanged(Customer customer, Key key, String oldValue, String newValue);
+    }
+
+    static final KeyListener[] NO_LISTENERS = {};
+
     private String name;
     private String address;
     private String personalId;
     private String phoneNumber;
     private String email;
+    private volatile KeyListener[] listeners = NO_LISTENERS; // Nästan alltid tom eller ett register, så en array räcker
 
     public Customer(String name, String address, String personalId, String phoneNumber, String email) {
         this.name = name;
@@ -37,7 +49,9 @@ public class Customer {
     }
 
     public void setPersonalId(String personalId) {
+        String oldValue = this.personalId;
         this.personalId = personalId;
+        fireKeyChanged(Key.PERSONAL_ID, oldValue, personalId);
     }
 
     // Getter och setter för phoneNumber
@@ -46,7 +60,9 @@ public class Customer {
     }
 
     public void setPhoneNumber(String phoneNumber) {
+        String oldValue = this.phoneNumber;
         this.phoneNumber = phoneNumber;
+        fireKeyChanged(Key.PHONE_NUMBER, oldValue, phoneNumber);
     }
 
     // Getter och setter för email
@@ -55,6 +71,49 @@ public class Customer {
     }
 
     public void setEmail(String email) {
+        String oldValue = this.email;
         this.email = email;
+        fireKeyChanged(Key.EMAIL, oldValue, email);
+    }
+
+    public synchronized void addKeyListener(KeyListener listener) {
+        listeners = withListener(listeners, listener);
+    }
+
+    public synchronized void removeKeyListener(KeyListener listener) {
+        listeners = withoutListener(listeners, listener);
+    }
+
+    // Lyssnarna som ska få veta om en ändring; en vy i ett CustomerStore hämtar dem från lagret
+    protected KeyListener[] keyListeners() {
+        return listeners;
+    }
+
+    protected void fireKeyChanged(Key key, String oldValue, String newValue) {
+        if (java.util.Objects.equals(oldValue, newValue)) {
+            return;
+        }
+        for (KeyListener listener : keyListeners()) {
+            listener.keyChanged(this, key, oldValue, newValue);
+        }
+    }
+
+    static KeyListener[] withListener(KeyListener[] listeners, KeyListener listener) {
+        KeyListener[] updated = java.util.Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        return updated;
+    }
+
+    // Lyssnare jämförs med equals, så att ett register kan ta bort sin lyssnare med en ny instans
+    static KeyListener[] withoutListener(KeyListener[] listeners, KeyListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                KeyListener[] updated = listeners.length == 1 ? NO_LISTENERS : new KeyListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+                return updated;
+            }
+        }
+        return listeners;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Kundregister med ett fåtal stora arrayer i stället för ett Customer-objekt och fem strängar per kund.
+// En kund lagras som en post i en bytepool: de fem fälten i UTF-8 efter varandra, vart och ett föregånget av
+// längden i en eller två byte (längd + 1, så att 0 betyder null). En intarray pekar ut varje kunds post.
+// Med miljontals kunder försvinner objekthuvuden och UTF-16-strängar, och en kund tar ungefär sina bytes plus 9.
+//
+// get(row) ger en vy (StoredCustomer) som läser och skriver fälten i lagret, så all kod som använder Customer
+// fungerar som förut. Poolen kan ligga utanför heapen (offHeap), och då ligger bara pekararrayen på heapen.
+// Ett ändrat fält skriver om kundens post sist i poolen; den gamla posten blir kvar tills compact() körs.
+//
+// Lagret är trådsäkert. Ändringar synkroniseras på lagret, men läsningar tar inget lås: poolen och pekararrayen
+// publiceras tillsammans (Layout), och en post skrivs klart innan dess pekare publiceras. En gammal post ändras
+// aldrig, så en läsare ser alltid en hel post, antingen den gamla eller den nya. Växer poolen kopieras även
+// pekararrayen, så att en läsare med den gamla layouten aldrig får en pekare in i den nya poolen.
+public class CustomerStore {
+    static final int NAME = 0;
+    static final int ADDRESS = 1;
+    static final int PERSONAL_ID = 2;
+    static final int PHONE_NUMBER = 3;
+    static final int EMAIL = 4;
+    private static final int FIELDS = 5;
+
+    private static final int MAX_FIELD_BYTES = 0x7FFE; // Längden + 1 ryms i två byte
+    private static final int AVERAGE_CUSTOMER_BYTES = 96;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    private static final VarHandle RECORDS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final boolean offHeap;
+    // Skrivarnas pool och pekararray, skyddas av lagret; läsare går via layout
+    private ByteBuffer pool;
+    private int[] records;
+    private volatile Layout layout;
+    private Customer.KeyListener[][] listeners; // Per rad, skapas först när någon lyssnar
+    private volatile int size;
+    private long garbageBytes;
+
+    private static final class Layout {
+        final ByteBuffer pool;
+        final int[] records;
+
+        Layout(ByteBuffer pool, int[] records) {
+            this.pool = pool;
+            this.records = records;
+        }
+    }
+
+    public CustomerStore() {
+        this(1024, false);
+    }
+
+    // expectedCustomers dimensionerar arrayerna från början, så att en inläsning inte behöver kopiera dem
+    public CustomerStore(int expectedCustomers, boolean offHeap) {
+        if (expectedCustomers < 0) {
+            throw new IllegalArgumentException("Antal kunder får inte vara negativt: " + expectedCustomers);
+        }
+        this.offHeap = offHeap;
+        int capacity = Math.max(expectedCustomers, 16);
+        this.records = new int[capacity];
+        this.pool = allocate((int) Math.min((long) capacity * AVERAGE_CUSTOMER_BYTES, MAX_CAPACITY));
+        publish();
+    }
+
+    // Lägger till en kund och returnerar en vy över den
+    public synchronized Customer add(String name, String address, String personalId, String phoneNumber, String email) {
+        byte[][] fields = {encode(name), encode(address), encode(personalId), encode(phoneNumber), encode(email)};
+        int recordBytes = 0;
+        for (byte[] field : fields) {
+            recordBytes += field == null ? 1 : prefixBytes(field.length) + field.length;
+        }
+        ensureCapacity(recordBytes);
+        if (size == records.length) {
+            records = Arrays.copyOf(records, (int) Math.min(records.length + (long) (records.length >> 1), MAX_CAPACITY));
+            if (listeners != null) {
+                listeners = Arrays.copyOf(listeners, records.length);
+            }
+            publish();
+        }
+        int row = size;
+        int record = pool.position();
+        for (byte[] field : fields) {
+            putField(field);
+        }
+        RECORDS.setRelease(records, row, record);
+        size = row + 1;
+        return new StoredCustomer(this, row);
+    }
+
+    // Kopierar en befintlig kund in i lagret; lyssnare följer inte med
+    public Customer add(Customer customer) {
+        return add(customer.getName(), customer.getAddress(), customer.getPersonalId(), customer.getPhoneNumber(), customer.getEmail());
+    }
+
+    public Customer get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Ingen kund på rad " + row);
+        }
+        return new StoredCustomer(this, row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Byte som kunddata och pekare upptar, med eller utan heap beroende på offHeap
+    public synchronized long getUsedBytes() {
+        return pool.position() + (long) size * Integer.BYTES;
+    }
+
+    // Skriver om poolen och pekararrayen i exakt storlek, utan gamla poster från ändrade kunder.
+    // Lämpligt efter en stor inläsning, eftersom poolen annars växer i steg.
+    public synchronized void compact() {
+        // Läsare kan fortfarande använda den gamla layouten, så den nya byggs i egna arrayer
+        ByteBuffer old = pool;
+        int[] compacted = new int[Math.max(size, 16)];
+        pool = allocate(Math.max(old.position() - (int) garbageBytes, 16));
+        for (int row = 0; row < size; row++) {
+            int offset = records[row];
+            int end = fieldOffset(old, offset, FIELDS);
+            compacted[row] = pool.position();
+            pool.put(old.duplicate().limit(end).position(offset));
+        }
+        records = compacted;
+        if (listeners != null) {
+            listeners = Arrays.copyOf(listeners, records.length);
+        }
+        garbageBytes = 0;
+        publish();
+    }
+
+    String getField(int row, int field) {
+        Layout current = layout;
+        int offset = fieldOffset(current.pool, (int) RECORDS.getAcquire(current.records, row), field);
+        int value = prefix(current.pool, offset);
+        if (value == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[value - 1];
+        current.pool.get(offset + prefixBytes(bytes.length), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Skriver kundens post på nytt med det ändrade fältet och returnerar det gamla värdet, så att vyn kan meddela lyssnarna
+    synchronized String setField(int row, int field, String value) {
+        String oldValue = getField(row, field);
+        byte[] encoded = encode(value);
+        int record = records[row];
+        int start = fieldOffset(pool, record, field);
+        int end = fieldOffset(pool, start, 1);
+        int recordEnd = fieldOffset(pool, end, FIELDS - 1 - field);
+        int newBytes = (start - record) + (encoded == null ? 1 : prefixBytes(encoded.length) + encoded.length) + (recordEnd - end);
+        ensureCapacity(newBytes); // En växt pool har samma positioner, så start, end och recordEnd gäller fortfarande
+        int rewritten = pool.position();
+        pool.put(pool.duplicate().limit(start).position(record));
+        putField(encoded);
+        pool.put(pool.duplicate().limit(recordEnd).position(end));
+        RECORDS.setRelease(records, row, rewritten);
+        garbageBytes += recordEnd - record;
+        return oldValue;
+    }
+
+    synchronized void addKeyListener(int row, Customer.KeyListener listener) {
+        if (listeners == null) {
+            listeners = new Customer.KeyListener[records.length][];
+        }
+        listeners[row] = Customer.withListener(keyListeners(row), listener);
+    }
+
+    synchronized void removeKeyListener(int row, Customer.KeyListener listener) {
+        if (listeners != null && listeners[row] != null) {
+            listeners[row] = Customer.withoutListener(listeners[row], listener);
+        }
+    }
+
+    synchronized Customer.KeyListener[] keyListeners(int row) {
+        return listeners == null || listeners[row] == null ? Customer.NO_LISTENERS : listeners[row];
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Fältet är för långt för kundregistret: " + bytes.length + " byte");
+        }
+        return bytes;
+    }
+
+    private void putField(byte[] bytes) {
+        int value = bytes == null ? 0 : bytes.length + 1;
+        if (value < 0x80) {
+            pool.put((byte) value);
+        } else {
+            pool.put((byte) (0x80 | value >>> 8)).put((byte) value);
+        }
+        if (bytes != null) {
+            pool.put(bytes);
+        }
+    }
+
+    // Poolen växer med hälften i taget, så att en stor pool inte blir dubbelt så stor som den behöver.
+    // Pekararrayen kopieras och publiceras med den nya poolen.
+    private void ensureCapacity(int bytes) {
+        if (pool.remaining() >= bytes) {
+            return;
+        }
+        long needed = (long) pool.position() + bytes;
+        if (needed > MAX_CAPACITY) {
+            throw new IllegalStateException("Kundregistret är fullt");
+        }
+        ByteBuffer grown = allocate((int) Math.min(Math.max(needed, pool.capacity() + (long) (pool.capacity() >> 1)), MAX_CAPACITY));
+        grown.put(pool.duplicate().flip());
+        pool = grown;
+        records = records.clone();
+        publish();
+    }
+
+    private void publish() {
+        layout = new Layout(pool, records);
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    // Position för fältet count steg efter offset, där offset pekar på början av ett fält
+    private static int fieldOffset(ByteBuffer pool, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            int value = prefix(pool, offset);
+            offset += value == 0 ? 1 : prefixBytes(value - 1) + value - 1;
+        }
+        return offset;
+    }
+
+    private static int prefix(ByteBuffer pool, int offset) {
+        int first = pool.get(offset) & 0xFF;
+        return first < 0x80 ? first : (first & 0x7F) << 8 | pool.get(offset + 1) & 0xFF;
+    }
+
+    // Antal byte för längden av ett värde med length byte
+    private static int prefixBytes(int length) {
+        return length + 1 < 0x80 ? 1 : 2;
+    }
+}
@@ -0,0 +1,210 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Sedlar och mynt i en valuta, i minsta enhet och i fallande ordning, för att räkna ut växel med så få
+// valörer som möjligt. Allt räknas i heltal, så 0.30 blir 30 öre och aldrig 0.29999.
+//
+// För de flesta valutor ger girig uppdelning (största valören först) det bästa resultatet. Det kontrolleras när
+// uppsättningen skapas, genom att jämföra med dynamisk programmering upp till summan av de två största valörerna;
+// finns inget motexempel där finns det inget alls (Kozen och Zaks). Annars byggs en tabell med bästa valör för varje
+// belopp upp till största valören gånger den näst största: en optimal uppdelning använder färre än så många andra
+// valörer, så större belopp kan först betalas med den största valören och resten slås upp i tabellen.
+//
+// changeInto skriver antalen i en array som anroparen återanvänder, så ingen växelberäkning skapar objekt.
+public final class DenominationSet {
+    private static final int MAX_TABLE_SIZE = 1 << 22;
+    private static final Map<java.util.Currency, DenominationSet> DEFAULTS = new ConcurrentHashMap<>();
+
+    static {
+        // Sedlar och mynt i omlopp, i öre respektive cent
+        register(of(java.util.Currency.getInstance("SEK"), 100_000, 50_000, 20_000, 10_000, 5_000, 2_000, 1_000, 500, 200, 100));
+        register(of(java.util.Currency.getInstance("EUR"), 50_000, 20_000, 10_000, 5_000, 2_000, 1_000, 500, 200, 100, 50, 20, 10, 5, 2, 1));
+        register(of(java.util.Currency.getInstance("USD"), 10_000, 5_000, 2_000, 1_000, 500, 200, 100, 25, 10, 5, 1));
+    }
+
+    private final java.util.Currency currency;
+    private final long[] denominations; // Fallande, i minsta enhet
+    private final long unit; // Största gemensamma delare; tabellen räknar i denna enhet
+    private final byte[] choice; // Null om uppsättningen är kanonisk; annars valörens index per belopp, -1 om beloppet inte går att ge
+    private final long tableLimit; // Belopp (i unit) som tabellen täcker
+
+    private DenominationSet(java.util.Currency currency, long[] denominations) {
+        this.currency = currency;
+        this.denominations = denominations;
+        long gcd = 0;
+        for (long denomination : denominations) {
+            gcd = gcd(gcd, denomination);
+        }
+        this.unit = gcd;
+
+        if (denominations.length == 1) {
+            this.choice = null;
+            this.tableLimit = 0;
+            return;
+        }
+        long[] units = new long[denominations.length];
+        for (int i = 0; i < units.length; i++) {
+            units[i] = denominations[i] / gcd;
+        }
+        if (units[0] + units[1] > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("Valörerna kräver en för stor växeltabell: " + Arrays.toString(denominations));
+        }
+        int checkLimit = (int) (units[0] + units[1]);
+        byte[] checkTable = buildTable(units, checkLimit);
+        // Kontrollen gäller bara uppsättningar där minsta valören är enheten; andra prissätts alltid med tabellen
+        boolean canonical = units[units.length - 1] == 1;
+        for (int amount = 1; amount < checkLimit && canonical; amount++) {
+            canonical = count(checkTable, units, amount) == greedy(units, amount);
+        }
+        if (canonical) {
+            this.choice = null;
+            this.tableLimit = 0;
+        } else {
+            long limit = units[0] * units[1];
+            if (limit > MAX_TABLE_SIZE) {
+                throw new IllegalArgumentException("Valörerna kräver en för stor växeltabell: " + Arrays.toString(denominations));
+            }
+            this.tableLimit = limit;
+            this.choice = buildTable(units, (int) limit);
+        }
+    }
+
+    // Valörerna i minsta enhet, t.ex. 2000 för en tjugolapp i kronor. Ordningen spelar ingen roll.
+    public static DenominationSet of(java.util.Currency currency, long... denominations) {
+        long[] sorted = denominations.clone();
+        Arrays.sort(sorted);
+        long[] descending = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] <= 0 || (i > 0 && sorted[i] == sorted[i - 1])) {
+                throw new IllegalArgumentException("Valörerna måste vara positiva och olika: " + Arrays.toString(denominations));
+            }
+            descending[sorted.length - 1 - i] = sorted[i];
+        }
+        if (descending.length == 0 || descending.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Antal valörer måste vara mellan 1 och " + Byte.MAX_VALUE);
+        }
+        return new DenominationSet(currency, descending);
+    }
+
+    // Standarduppsättningen för valutan, eller null om ingen är registrerad
+    public static DenominationSet forCurrency(java.util.Currency currency) {
+        return DEFAULTS.get(currency);
+    }
+
+    // Ersätter standarduppsättningen för valutan, t.ex. om kassan inte tar emot de största sedlarna
+    public static void register(DenominationSet set) {
+        DEFAULTS.put(set.currency, set);
+    }
+
+    public java.util.Currency getCurrency() {
+        return currency;
+    }
+
+    public int size() {
+        return denominations.length;
+    }
+
+    // Valören på position index, i minsta enhet; största först
+    public long denomination(int index) {
+        return denominations[index];
+    }
+
+    // Om största valören först alltid ger färst sedlar och mynt
+    public boolean isCanonical() {
+        return choice == null;
+    }
+
+    // Delar upp amount (minsta enhet) i counts, ett antal per valör i samma ordning som denomination(i).
+    // Returnerar det som inte går att ge med valörerna, t.ex. öret när minsta myntet är en krona.
+    public long changeInto(long amount, int[] counts) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Beloppet får inte vara negativt: " + amount);
+        }
+        if (counts.length < denominations.length) {
+            throw new IllegalArgumentException("Arrayen har plats för " + counts.length + " av " + denominations.length + " valörer");
+        }
+        Arrays.fill(counts, 0, denominations.length, 0);
+        long remainder = amount % unit;
+        long units = amount / unit;
+        if (choice == null) {
+            for (int i = 0; i < denominations.length; i++) {
+                long denomination = denominations[i] / unit;
+                counts[i] = Math.toIntExact(units / denomination);
+                units %= denomination;
+            }
+            return remainder + units * unit;
+        }
+
+        // Över tabellen tas största valören först, så att resten hamnar i tabellen
+        long largest = denominations[0] / unit;
+        if (units >= tableLimit) {
+            long bulk = (units - tableLimit) / largest + 1;
+            counts[0] = Math.toIntExact(bulk);
+            units -= bulk * largest;
+        }
+        int amountInTable = (int) units;
+        while (amountInTable > 0 && choice[amountInTable] < 0) {
+            amountInTable--; // Beloppet går inte att ge exakt; ge så mycket som möjligt
+        }
+        remainder += (units - amountInTable) * unit;
+        while (amountInTable > 0) {
+            int index = choice[amountInTable];
+            counts[index]++;
+            amountInTable -= (int) (denominations[index] / unit);
+        }
+        return remainder;
+    }
+
+    // Bästa valör för varje belopp 0..limit-1 (i unit), -1 om beloppet inte går att ge
+    private static byte[] buildTable(long[] units, int limit) {
+        byte[] choice = new byte[limit];
+        int[] best = new int[limit];
+        Arrays.fill(choice, (byte) -1);
+        for (int amount = 1; amount < limit; amount++) {
+            int fewest = Integer.MAX_VALUE;
+            for (int i = 0; i < units.length; i++) {
+                if (units[i] <= amount) {
+                    int rest = amount - (int) units[i];
+                    if ((rest == 0 || choice[rest] >= 0) && best[rest] + 1 < fewest) {
+                        fewest = best[rest] + 1;
+                        choice[amount] = (byte) i;
+                    }
+                }
+            }
+            best[amount] = fewest;
+        }
+        return choice;
+    }
+
+    private static int count(byte[] choice, long[] units, int amount) {
+        int count = 0;
+        while (amount > 0) {
+            if (choice[amount] < 0) {
+                return -1;
+            }
+            amount -= (int) units[choice[amount]];
+            count++;
+        }
+        return count;
+    }
+
+    // Antal valörer med girig uppdelning, -1 om den inte går jämnt ut
+    private static int greedy(long[] units, long amount) {
+        int count = 0;
+        for (int i = 0; i < units.length; i++) {
+            count += (int) (amount / units[i]);
+            amount %= units[i];
+        }
+        return amount == 0 ? count : -1;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -2,6 +2,15 @@ import java.util.Date;
 
 public abstract class Discount {
     protected Date validityPeriod;
+    // Valfritt mål: rabatten gäller bara en viss produkt eller produktgrupp. Utan mål gäller den alla produkter.
+    protected Product targetProduct;
+    protected ProductGroup targetGroup;
+    // Staplingspolicy, se DiscountManager.applyBestDiscount. Som standard kombineras en rabatt inte med andra.
+    protected int priority;
+    protected String exclusiveGroup;
+    protected boolean stackable;
+    // Satt när rabatten lagts till i en DiscountManager, som då har kopierat mål och policy till sitt index och sin plan
+    private boolean registered;
 
     public Discount(Date validityPeriod) {
         this.validityPeriod = validityPeriod;
@@ -9,12 +18,107 @@ public abstract class Discount {
 
     public abstract double applyDiscount(double price);
 
+    // Pris för en hel rad med quantity enheter. Rabatter som beror på antalet (t.ex. köp X få Y) skriver över denna.
+    public double applyDiscount(double unitPrice, int quantity) {
+        return applyDiscount(unitPrice) * quantity;
+    }
+
+    // Som ovan när priset är i priceCurrency. Rabatter med ett belopp i en annan valuta räknar om beloppet först.
+    public double applyDiscount(double price, java.util.Currency priceCurrency) {
+        return applyDiscount(price);
+    }
+
+    public double applyDiscount(double unitPrice, int quantity, java.util.Currency priceCurrency) {
+        return applyDiscount(unitPrice, quantity);
+    }
+
+    // Som ovan med givna växelkurser, t.ex. de som kvittot låste när köpet startade
+    public double applyDiscount(double price, java.util.Currency priceCurrency, ExchangeRateTable rates) {
+        return applyDiscount(price, priceCurrency);
+    }
+
+    public double applyDiscount(double unitPrice, int quantity, java.util.Currency priceCurrency, ExchangeRateTable rates) {
+        return applyDiscount(unitPrice, quantity, priceCurrency);
+    }
+
     public boolean isValid() {
         Date currentDate = new Date();
         return validityPeriod == null || currentDate.before(validityPeriod);
     }
 
     public boolean isApplicable(Product product) {
-        return isValid();
+        return isValid() && matchesTarget(product);
+    }
+
+    protected boolean matchesTarget(Product product) {
+        if (targetProduct != null) {
+            // Produkter ur en mappad katalog är vyer som jämförs med equals, och en artikel med nytt pris är en ny
+            // Product med samma streckkod
+            return targetProduct.equals(product) || (product.getBarcode() != 0 && product.getBarcode() == targetProduct.getBarcode());
+        }
+        if (targetGroup != null) {
+            return product.isInGroup(targetGroup);
+        }
+        return true;
+    }
+
+    // Målet måste sättas innan rabatten läggs till i en DiscountManager, eftersom indexet byggs då
+    public void setTargetProduct(Product targetProduct) {
+        ensureNotRegistered();
+        this.targetProduct = targetProduct;
+        this.targetGroup = null;
+    }
+
+    public void setTargetGroup(ProductGroup targetGroup) {
+        ensureNotRegistered();
+        this.targetGroup = targetGroup;
+        this.targetProduct = null;
+    }
+
+    public Product getTargetProduct() {
+        return targetProduct;
+    }
+
+    public ProductGroup getTargetGroup() {
+        return targetGroup;
+    }
+
+    // Högre prioritet appliceras tidigare när stapelbara rabatter kedjas; lika prioritet går i registreringsordning
+    public void setPriority(int priority) {
+        ensureNotRegistered();
+        this.priority = priority;
+    }
+
+    // Högst en rabatt ur samma exklusiva grupp används för en rad, t.ex. "kupong" eller "medlemspris"
+    public void setExclusiveGroup(String exclusiveGroup) {
+        ensureNotRegistered();
+        this.exclusiveGroup = exclusiveGroup;
+    }
+
+    public void setStackable(boolean stackable) {
+        ensureNotRegistered();
+        this.stackable = stackable;
+    }
+
+    void markRegistered() {
+        registered = true;
+    }
+
+    private void ensureNotRegistered() {
+        if (registered) {
+            throw new IllegalStateException("Rabatten har lagts till i en DiscountManager och kan inte ändras; skapa en ny rabatt");
+        }
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getExclusiveGroup() {
+        return exclusiveGroup;
+    }
+
+    public boolean isStackable() {
+        return stackable;
     }
 }
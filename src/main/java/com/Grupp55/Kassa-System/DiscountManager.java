@@ -1,33 +1,381 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+// Prissättningen följer rabatternas staplingspolicy (se Discount): en rad får antingen en enda icke-stapelbar
+// rabatt, eller en kedja av stapelbara rabatter med högst en rabatt per exklusiv grupp, beroende på vad som blir
+// billigast. Rabatterna gäller en rad i taget, så den billigaste korgen är summan av varje rads billigaste pris.
+//
+// Sökningen är exakt så länge den ryms i BRANCH_BUDGET förgreningar per rad, vilket räcker för ett tiotal exklusiva
+// grupper med stapelbara rabatter på samma rad. Därefter tas grupperna girigt (första regeln som inte höjer priset),
+// och priset är då fortfarande tillåtet enligt policyn men inte nödvändigtvis det billigaste.
+//
+// Receipt och PromotionSimulator prissätter med applyBestDiscount. applyAllDiscounts kedjar alla rabatter utan
+// hänsyn till policyn och ger därför ett annat pris än kvittot så snart en rad har mer än en rabatt.
+//
+// Priserna är i produktens valuta. Ett fast rabattbelopp i en annan valuta växlas dit med de kurser som anges,
+// t.ex. kvittots låsta kurser, eller annars med de gällande kurserna.
 public class DiscountManager {
+    private static final int BRANCH_BUDGET = 1024; // Förgreningar per rad innan de exklusiva grupperna väljs girigt
+    private static final int MAX_MEMOS = 1 << 16;
+
     private List<Discount> discounts;
+    private final Set<Discount> added = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Inverterat index: för varje produkt/grupp lagras positionerna (i discounts) för rabatterna som riktar sig dit.
+    // Rabatter utan mål hamnar i globalDiscounts. En produkt behöver då bara titta på sina egna hinkar.
+    private final Map<Product, IndexBucket> productIndex;
+    private final Map<Long, IndexBucket> barcodeIndex; // Mål med streckkod, så att en ny Product för artikeln hittas
+    private final Map<ProductGroup, IndexBucket> groupIndex;
+    private final IndexBucket globalDiscounts;
+
+    // Rabatterna översatta till en platt prisplan med samma positioner som i discounts, utökas i addDiscount
+    private final DiscountPlan plan = new DiscountPlan();
+
+    // Återanvänd arbetsyta för att slå ihop hinkarna i registreringsordning
+    private int[] candidates = new int[16];
+
+    // Arbetsyta för lösaren: stapelbara regler i kedjeordning, använda grupper och girigt tagna grupper
+    private int[] stack = new int[16];
+    private long[] order = new long[16];
+    private boolean[] usedGroups = new boolean[0];
+    private int[] greedyGroups = new int[0];
+    private int greedyTop;
+    private int branches;
+    private java.util.Currency lineCurrency;
+    private ExchangeRateTable lineRates;
+
+    // Senaste resultaten per produkt, giltiga så länge produktens kandidatregler är desamma
+    private final Map<Product, Memo> memos = new HashMap<>();
 
     // Konstruktor
     public DiscountManager() {
         this.discounts = new ArrayList<>();
+        this.productIndex = new HashMap<>();
+        this.barcodeIndex = new HashMap<>();
+        this.groupIndex = new HashMap<>();
+        this.globalDiscounts = new IndexBucket();
     }
 
-    // Lägg till rabatt
-    public void addDiscount(Discount discount) {
+    // Lägg till rabatt. Samma rabattobjekt läggs bara till en gång; returnerar false om det redan fanns.
+    public boolean addDiscount(Discount discount) {
+        if (!added.add(discount)) {
+            return false;
+        }
+        int position = discounts.size();
+        discount.markRegistered();
         discounts.add(discount);
+        plan.add(discount);
+
+        if (discount.getTargetProduct() != null) {
+            long barcode = discount.getTargetProduct().getBarcode();
+            if (barcode != 0) {
+                barcodeIndex.computeIfAbsent(barcode, k -> new IndexBucket()).add(position);
+            } else {
+                productIndex.computeIfAbsent(discount.getTargetProduct(), k -> new IndexBucket()).add(position);
+            }
+        } else if (discount.getTargetGroup() != null) {
+            groupIndex.computeIfAbsent(discount.getTargetGroup(), k -> new IndexBucket()).add(position);
+        } else {
+            globalDiscounts.add(position);
+        }
+        return true;
     }
 
-    // Applicera bästa rabatt
+    // Kopia med samma rabatter. En DiscountManager är inte trådsäker, så parallella beräkningar använder varsin kopia.
+    public DiscountManager copy() {
+        DiscountManager copy = new DiscountManager();
+        for (Discount discount : discounts) {
+            copy.addDiscount(discount);
+        }
+        return copy;
+    }
+
+    public List<Discount> getDiscounts() {
+        return Collections.unmodifiableList(discounts);
+    }
+
+    // Bästa pris för en ensam enhet enligt staplingspolicyn; en ensam enhet får inga gratisenheter av köp X få Y
     public double applyBestDiscount(Product product) {
-        double originalPrice = product.getPrice().getAmount();
-        double bestPrice = originalPrice;
+        return applyBestDiscount(product, 1);
+    }
 
-        for (Discount discount : discounts) {
-            if (discount.isApplicable(product)) {
-                double discountedPrice = discount.applyDiscount(originalPrice);
-                if (discountedPrice < bestPrice) {
-                    bestPrice = discountedPrice;
+    // Bästa radpris för quantity enheter av produkten
+    public double applyBestDiscount(Product product, int quantity) {
+        return applyBestDiscount(product, product.getPrice().getAmount(), quantity);
+    }
+
+    // Som ovan men med ett givet styckpris, t.ex. det historiska priset på ett arkiverat kvitto
+    public double applyBestDiscount(Product product, double unitPrice, int quantity) {
+        return applyBestDiscount(product, unitPrice, quantity, CurrencyRegistry.getExchangeRates());
+    }
+
+    // Som ovan med givna växelkurser för belopp i en annan valuta, t.ex. de som kvittot låste när köpet startade
+    public double applyBestDiscount(Product product, double unitPrice, int quantity, ExchangeRateTable rates) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Antal måste vara positivt: " + quantity);
+        }
+        lineRates = rates;
+        return solve(product, unitPrice, quantity);
+    }
+
+    // Applicera alla rabatter som gäller produkten efter varandra, i den ordning de lades till, oavsett staplingspolicy.
+    // Inte samma pris som på kvittot, se klasskommentaren.
+    public double applyAllDiscounts(Product product, double price) {
+        int count = collectCandidates(product, true);
+        long now = System.currentTimeMillis();
+        java.util.Currency currency = currencyOf(product);
+        ExchangeRateTable rates = CurrencyRegistry.getExchangeRates();
+        for (int i = 0; i < count; i++) {
+            int rule = candidates[i];
+            if (plan.isApplicable(rule, product, now)) {
+                price = plan.applyUnit(rule, price, currency, rates);
+            }
+        }
+        return price;
+    }
+
+    // Som ovan men för en hel rad; varje rabatt får radens aktuella pris per enhet och antalet
+    public double applyAllDiscounts(Product product, double unitPrice, int quantity) {
+        double amount = unitPrice * quantity;
+        int count = collectCandidates(product, true);
+        long now = System.currentTimeMillis();
+        java.util.Currency currency = currencyOf(product);
+        ExchangeRateTable rates = CurrencyRegistry.getExchangeRates();
+        for (int i = 0; i < count; i++) {
+            int rule = candidates[i];
+            if (plan.isApplicable(rule, product, now)) {
+                amount = plan.applyLine(rule, amount / quantity, quantity, currency, rates);
+            }
+        }
+        return amount;
+    }
+
+    private double solve(Product product, double unitPrice, int quantity) {
+        int count = collectCandidates(product, true);
+        long now = System.currentTimeMillis();
+        lineCurrency = currencyOf(product);
+        Memo memo = memos.get(product);
+        if (memo != null && memo.matches(candidates, count, now, lineCurrency)) {
+            int slot = memo.find(unitPrice, quantity);
+            if (slot >= 0) {
+                return memo.amounts[slot];
+            }
+        }
+
+        if (stack.length < count) {
+            stack = new int[candidates.length];
+        }
+        double start = unitPrice * quantity;
+        double best = start;
+        int stacked = 0;
+        long expires = Long.MAX_VALUE;
+        boolean cacheable = true;
+        for (int i = 0; i < count; i++) {
+            int rule = candidates[i];
+            // Egna rabattklasser kan bero på annat än tiden, så deras resultat sparas inte
+            cacheable &= plan.opcode(rule) != DiscountPlan.CUSTOM;
+            if (!plan.isApplicable(rule, product, now)) {
+                continue;
+            }
+            expires = Math.min(expires, plan.validUntil(rule));
+            cacheable &= !plan.converts(rule, lineCurrency); // Beror på växelkursen
+            if (plan.isStackable(rule)) {
+                stack[stacked++] = rule;
+            } else {
+                best = Math.min(best, apply(rule, start, quantity));
+            }
+        }
+        if (stacked > 0) {
+            if (plan.isPrioritized()) {
+                sortByPriority(stacked);
+            }
+            if (usedGroups.length < plan.groupCount()) {
+                usedGroups = new boolean[plan.groupCount()];
+                greedyGroups = new int[plan.groupCount()];
+            }
+            branches = BRANCH_BUDGET;
+            best = Math.min(best, chain(0, stacked, start, quantity));
+        }
+
+        if (cacheable) {
+            if (memo == null || !memo.matches(candidates, count, now, lineCurrency)) {
+                if (memos.size() >= MAX_MEMOS) {
+                    memos.clear();
                 }
+                memo = new Memo(Arrays.copyOf(candidates, count), expires, lineCurrency);
+                memos.put(product, memo);
             }
+            memo.put(unitPrice, quantity, best);
         }
+        return best;
+    }
 
-        return bestPrice;
+    // Kedjar de stapelbara reglerna från index i. Reglerna är monotona (lägre pris in ger inte högre pris ut),
+    // så en regel utan grupp tas med precis när den inte höjer priset. För en regel i en exklusiv grupp prövas
+    // både att ta med den och att lämna gruppen ledig för en senare regel, så länge förgreningsbudgeten räcker.
+    private double chain(int i, int stacked, double amount, int quantity) {
+        int greedyStart = greedyTop;
+        for (; i < stacked; i++) {
+            int rule = stack[i];
+            int group = plan.group(rule);
+            if (group >= 0 && usedGroups[group]) {
+                continue;
+            }
+            double next = apply(rule, amount, quantity);
+            if (next > amount) {
+                continue;
+            }
+            if (group < 0) {
+                amount = next;
+            } else if (branches > 0) {
+                branches--;
+                usedGroups[group] = true;
+                double with = chain(i + 1, stacked, next, quantity);
+                usedGroups[group] = false;
+                amount = Math.min(with, chain(i + 1, stacked, amount, quantity));
+                break;
+            } else {
+                amount = next;
+                usedGroups[group] = true;
+                greedyGroups[greedyTop++] = group;
+            }
+        }
+        while (greedyTop > greedyStart) {
+            usedGroups[greedyGroups[--greedyTop]] = false;
+        }
+        return amount;
+    }
+
+    private double apply(int rule, double amount, int quantity) {
+        return plan.applyLine(rule, amount / quantity, quantity, lineCurrency, lineRates);
+    }
+
+    // Valutan som produktens pris, och därmed radens pris, är i
+    private static java.util.Currency currencyOf(Product product) {
+        Money price = product.getPrice();
+        return price == null ? null : price.getCurrency();
+    }
+
+    // Sorterar stack[0, stacked) på fallande prioritet; lika prioritet behåller registreringsordningen
+    private void sortByPriority(int stacked) {
+        if (order.length < stacked) {
+            order = new long[stack.length];
+        }
+        for (int i = 0; i < stacked; i++) {
+            int rule = stack[i];
+            order[i] = ((long) Integer.MAX_VALUE - plan.priority(rule)) << 31 | rule;
+        }
+        Arrays.sort(order, 0, stacked);
+        for (int i = 0; i < stacked; i++) {
+            stack[i] = (int) (order[i] & Integer.MAX_VALUE);
+        }
+    }
+
+    // Samlar positionerna för rabatter som kan gälla produkten i candidates och returnerar antalet
+    private int collectCandidates(Product product, boolean inOrder) {
+        int count = 0;
+        int buckets = 0;
+
+        IndexBucket productBucket = product.getBarcode() != 0
+                ? (barcodeIndex.isEmpty() ? null : barcodeIndex.get(product.getBarcode()))
+                : (productIndex.isEmpty() ? null : productIndex.get(product));
+        if (productBucket != null) {
+            count = productBucket.copyTo(this, count);
+            buckets++;
+        }
+        if (!groupIndex.isEmpty()) {
+            for (ProductGroup group : product.getGroups()) {
+                IndexBucket groupBucket = groupIndex.get(group);
+                if (groupBucket != null) {
+                    count = groupBucket.copyTo(this, count);
+                    buckets++;
+                }
+            }
+        }
+        if (globalDiscounts.size > 0) {
+            count = globalDiscounts.copyTo(this, count);
+            buckets++;
+        }
+
+        // Varje hink är redan sorterad, så bara sammanslagna hinkar behöver sorteras
+        if (inOrder && buckets > 1) {
+            Arrays.sort(candidates, 0, count);
+        }
+        return count;
+    }
+
+    private static final class IndexBucket {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int copyTo(DiscountManager manager, int offset) {
+            if (manager.candidates.length < offset + size) {
+                manager.candidates = Arrays.copyOf(manager.candidates, Math.max(offset + size, manager.candidates.length * 2));
+            }
+            System.arraycopy(positions, 0, manager.candidates, offset, size);
+            return offset + size;
+        }
+    }
+
+    // Några sparade radpriser för en produkt, nycklade på styckpris och antal. Signaturen är produktens
+    // kandidatregler och valuta; de ändras när en rabatt läggs till eller produkten byter grupp eller valuta,
+    // och då byggs en ny post.
+    private static final class Memo {
+        private static final int SLOTS = 4;
+
+        final int[] signature;
+        final long expires; // Första tidpunkt då någon av reglerna går ut
+        final java.util.Currency currency;
+        final double[] unitPrices = new double[SLOTS];
+        final int[] quantities = new int[SLOTS];
+        final double[] amounts = new double[SLOTS];
+        int size;
+        int next;
+
+        Memo(int[] signature, long expires, java.util.Currency currency) {
+            this.signature = signature;
+            this.expires = expires;
+            this.currency = currency;
+        }
+
+        boolean matches(int[] candidates, int count, long now, java.util.Currency currency) {
+            return now < expires && java.util.Objects.equals(this.currency, currency)
+                    && Arrays.equals(signature, 0, signature.length, candidates, 0, count);
+        }
+
+        int find(double unitPrice, int quantity) {
+            for (int i = 0; i < size; i++) {
+                if (quantities[i] == quantity && unitPrices[i] == unitPrice) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void put(double unitPrice, int quantity, double amount) {
+            int slot;
+            if (size < SLOTS) {
+                slot = size++;
+            } else {
+                slot = next; // Den äldsta posten skrivs över
+                next = (next + 1) % SLOTS;
+            }
+            unitPrices[slot] = unitPrice;
+            quantities[slot] = quantity;
+            amounts[slot] = amount;
+        }
     }
 }
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Rabatterna i en DiscountManager översatta till en platt prisplan: en regel per rabatt, i samma ordning,
+// med opkod och operander i primitiva arrayer. Prissättningen blir en switch över opkoden i stället för
+// virtuella anrop till isApplicable, isValid och applyDiscount på en blandad lista av rabattobjekt,
+// och giltighetstiden jämförs mot en tidpunkt som läses en gång per rad i stället för ett nytt Date per rabatt.
+//
+// Bara SimpleDiscount och BuyXGetYDiscount (exakt de klasserna) översätts; andra rabatter, även subklasser,
+// blir CUSTOM-regler som anropar rabattobjektet som tidigare. Målet (produkt eller grupp) ingår inte i planen,
+// eftersom DiscountManagers index redan bara lämnar ut regler vars mål matchar produkten.
+// Staplingspolicyn (prioritet, stapelbar, exklusiv grupp) ligger också i planen; grupperna numreras i den
+// ordning de först dyker upp. Ett fast belopp i en annan valuta än radens räknas om med de växelkurser som
+// anges vid prissättningen. Planen byggs ut när en rabatt läggs till, och rabattens mål och staplingspolicy
+// går inte att ändra efter det (se Discount).
+final class DiscountPlan {
+    static final byte PERCENT = 0;
+    static final byte AMOUNT = 1;
+    static final byte BUY_X_GET_Y = 2;
+    static final byte CUSTOM = 3;
+
+    private int size;
+    private byte[] opcodes = new byte[16];
+    private double[] values = new double[16]; // PERCENT: prisfaktor, AMOUNT: avdrag per enhet
+    private java.util.Currency[] currencies = new java.util.Currency[16]; // AMOUNT: avdragets valuta, null om radens
+    private int[] requiredQuantities = new int[16]; // BUY_X_GET_Y: X
+    private int[] freeQuantities = new int[16]; // BUY_X_GET_Y: Y
+    private long[] validUntil = new long[16]; // Millisekunder, Long.MAX_VALUE om rabatten inte går ut
+    private Discount[] custom = new Discount[16];
+    private int[] priorities = new int[16];
+    private boolean[] stackable = new boolean[16];
+    private int[] groups = new int[16]; // -1 om rabatten inte ingår i någon exklusiv grupp
+    private final Map<String, Integer> groupIds = new HashMap<>();
+    private boolean prioritized; // Någon regel har en annan prioritet än 0
+
+    void add(Discount discount) {
+        if (size == opcodes.length) {
+            grow();
+        }
+        int rule = size++;
+        Class<?> type = discount.getClass();
+        if (type == SimpleDiscount.class) {
+            SimpleDiscount simple = (SimpleDiscount) discount;
+            if (simple.isPercentage()) {
+                opcodes[rule] = PERCENT;
+                values[rule] = 1 - simple.getDiscountValue() / 100; // Samma uttryck som SimpleDiscount, så resultatet blir identiskt
+            } else {
+                opcodes[rule] = AMOUNT;
+                values[rule] = simple.getDiscountValue();
+                currencies[rule] = simple.getCurrency();
+            }
+        } else if (type == BuyXGetYDiscount.class) {
+            BuyXGetYDiscount buyXGetY = (BuyXGetYDiscount) discount;
+            opcodes[rule] = BUY_X_GET_Y;
+            requiredQuantities[rule] = buyXGetY.getRequiredQuantity();
+            freeQuantities[rule] = buyXGetY.getDiscountQuantity();
+        } else {
+            opcodes[rule] = CUSTOM;
+            custom[rule] = discount;
+        }
+        validUntil[rule] = discount.validityPeriod == null ? Long.MAX_VALUE : discount.validityPeriod.getTime();
+        priorities[rule] = discount.getPriority();
+        prioritized |= discount.getPriority() != 0;
+        stackable[rule] = discount.isStackable();
+        String group = discount.getExclusiveGroup();
+        groups[rule] = group == null ? -1 : groupIds.computeIfAbsent(group, g -> groupIds.size());
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte opcode(int rule) {
+        return opcodes[rule];
+    }
+
+    long validUntil(int rule) {
+        return validUntil[rule];
+    }
+
+    int priority(int rule) {
+        return priorities[rule];
+    }
+
+    boolean isPrioritized() {
+        return prioritized;
+    }
+
+    boolean isStackable(int rule) {
+        return stackable[rule];
+    }
+
+    int group(int rule) {
+        return groups[rule];
+    }
+
+    int groupCount() {
+        return groupIds.size();
+    }
+
+    // Samma villkor som Discount.isApplicable för en produkt som redan matchar regelns mål
+    boolean isApplicable(int rule, Product product, long now) {
+        if (opcodes[rule] == CUSTOM) {
+            return custom[rule].isApplicable(product);
+        }
+        return now < validUntil[rule];
+    }
+
+    // Pris per enhet efter regeln, som Discount.applyDiscount(price, currency). Köp X få Y ger här genomsnittspriset
+    // i hela omgångar, som rabattobjektet; DiscountManager prissätter därför alltid rader med applyLine.
+    double applyUnit(int rule, double price, java.util.Currency currency, ExchangeRateTable rates) {
+        switch (opcodes[rule]) {
+            case PERCENT:
+                return price * values[rule];
+            case AMOUNT:
+                return Math.max(price - amount(rule, currency, rates), 0); // Ingen negativt pris
+            case BUY_X_GET_Y:
+                return price * requiredQuantities[rule] / (requiredQuantities[rule] + freeQuantities[rule]);
+            default:
+                return custom[rule].applyDiscount(price, currency, rates);
+        }
+    }
+
+    // Radpris efter regeln, som Discount.applyDiscount(unitPrice, quantity, currency, rates)
+    double applyLine(int rule, double unitPrice, int quantity, java.util.Currency currency, ExchangeRateTable rates) {
+        switch (opcodes[rule]) {
+            case PERCENT:
+                return unitPrice * values[rule] * quantity;
+            case AMOUNT:
+                return Math.max(unitPrice - amount(rule, currency, rates), 0) * quantity;
+            case BUY_X_GET_Y:
+                int freeUnits = quantity / (requiredQuantities[rule] + freeQuantities[rule]) * freeQuantities[rule];
+                return unitPrice * (quantity - freeUnits);
+            default:
+                return custom[rule].applyDiscount(unitPrice, quantity, currency, rates);
+        }
+    }
+
+    // Om regeln är ett belopp som måste växlas till currency, så att priset beror på växelkursen
+    boolean converts(int rule, java.util.Currency currency) {
+        return opcodes[rule] == AMOUNT && currencies[rule] != null && currency != null && !currencies[rule].equals(currency);
+    }
+
+    // Avdraget i radens valuta med kurserna i rates, som SimpleDiscount.amountIn
+    private double amount(int rule, java.util.Currency currency, ExchangeRateTable rates) {
+        return converts(rule, currency) ? values[rule] * CurrencyRegistry.getExchangeRate(rates, currencies[rule], currency) : values[rule];
+    }
+
+    private void grow() {
+        int capacity = opcodes.length * 2;
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        values = Arrays.copyOf(values, capacity);
+        currencies = Arrays.copyOf(currencies, capacity);
+        requiredQuantities = Arrays.copyOf(requiredQuantities, capacity);
+        freeQuantities = Arrays.copyOf(freeQuantities, capacity);
+        validUntil = Arrays.copyOf(validUntil, capacity);
+        custom = Arrays.copyOf(custom, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        stackable = Arrays.copyOf(stackable, capacity);
+        groups = Arrays.copyOf(groups, capacity);
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+// Läser växelkurser från en lokal fil och bygger en komplett korskurstabell.
+// Filen innehåller bara kurser mot en basvaluta; alla andra par räknas fram via basvalutan.
+//
+// CSV: en rad per valuta, "USD,0.095" betyder att 1 enhet basvaluta = 0.095 USD. Tomma rader och rader
+// som börjar med # hoppas över. Med semikolon som avgränsare får kursen ha decimalkomma, t.ex. "USD;0,095".
+// XML: ECB:s dagliga kursfil, där basvalutan alltid är EUR.
+public final class ExchangeRateLoader {
+    public static final java.util.Currency ECB_BASE = java.util.Currency.getInstance("EUR");
+
+    private ExchangeRateLoader() {
+    }
+
+    // Läs en kursfil och gör den till gällande kurser. XML-filer läses som ECB-format, övriga som CSV mot basvalutan.
+    public static ExchangeRateTable load(Path file, java.util.Currency csvBase) throws IOException {
+        return CurrencyRegistry.setExchangeRates(read(file, csvBase));
+    }
+
+    // Läs en kursfil utan att ändra de gällande kurserna eller registret; load publicerar tabellen
+    public static ExchangeRateTable read(Path file, java.util.Currency csvBase) throws IOException {
+        if (file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".xml")) {
+            try (InputStream in = Files.newInputStream(file)) {
+                return CurrencyRegistry.fromBaseRates(ECB_BASE, readEcbXml(in));
+            }
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return CurrencyRegistry.fromBaseRates(csvBase, readCsv(reader, csvBase));
+        }
+    }
+
+    // Kurser per enhet basvaluta, i den ordning de står i filen
+    public static Map<java.util.Currency, Double> readCsv(Reader reader, java.util.Currency base) throws IOException {
+        Map<java.util.Currency, Double> rates = new LinkedHashMap<>();
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            boolean semicolon = line.indexOf(';') >= 0;
+            String[] fields = line.split(semicolon ? ";" : ",");
+            if (fields.length != 2) {
+                throw new IOException("Ogiltig rad " + lineNumber + " i växelkursfil: " + line);
+            }
+            String code = fields[0].strip();
+            String rate = fields[1].strip();
+            if (lineNumber == 1 && code.equalsIgnoreCase("valuta")) {
+                continue; // Rubrikrad
+            }
+            put(rates, code, semicolon ? rate.replace(',', '.') : rate, "rad " + lineNumber);
+        }
+        checkBase(rates, base);
+        return rates;
+    }
+
+    // Kurser per euro ur ECB:s format, <Cube currency="USD" rate="1.0876"/>
+    public static Map<java.util.Currency, Double> readEcbXml(InputStream in) throws IOException {
+        Map<java.util.Currency, Double> rates = new LinkedHashMap<>();
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            // Kursfilen kommer utifrån, så externa entiteter och DTD:er får inte läsas in
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setExpandEntityReferences(false);
+            NodeList cubes = factory.newDocumentBuilder().parse(in).getElementsByTagName("Cube");
+            for (int i = 0; i < cubes.getLength(); i++) {
+                Element cube = (Element) cubes.item(i);
+                if (cube.hasAttribute("currency")) {
+                    put(rates, cube.getAttribute("currency"), cube.getAttribute("rate"), "valuta " + cube.getAttribute("currency"));
+                }
+            }
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Kunde inte läsa växelkursfil: " + e.getMessage(), e);
+        }
+        checkBase(rates, ECB_BASE);
+        return rates;
+    }
+
+    private static void put(Map<java.util.Currency, Double> rates, String code, String value, String where) throws IOException {
+        java.util.Currency currency;
+        double rate;
+        try {
+            currency = java.util.Currency.getInstance(code.toUpperCase(Locale.ROOT));
+            rate = Double.parseDouble(value);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Ogiltig " + where + " i växelkursfil: " + code + " " + value, e);
+        }
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IOException("Ogiltig växelkurs för " + currency + ": " + value);
+        }
+        if (rates.put(currency, rate) != null) {
+            throw new IOException("Valutan " + currency + " förekommer flera gånger i växelkursfilen");
+        }
+    }
+
+    private static void checkBase(Map<java.util.Currency, Double> rates, java.util.Currency base) throws IOException {
+        Double baseRate = rates.get(base);
+        if (baseRate != null && baseRate != 1.0) {
+            throw new IOException("Basvalutan " + base + " måste ha kursen 1");
+        }
+        rates.remove(base);
+        if (rates.isEmpty()) {
+            throw new IOException("Växelkursfilen innehåller inga kurser");
+        }
+    }
+}
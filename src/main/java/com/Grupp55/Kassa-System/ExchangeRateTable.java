@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+// Oföränderlig ögonblicksbild av alla växelkurser. Kurserna ligger i en tät matris där
+// kursen från valuta i till valuta j finns på plats i * size + j, och NaN betyder att kurs saknas.
+// En ändring ger alltid en ny tabell med högre version, så den som läser en tabell ser aldrig en halvuppdaterad kurs.
+//
+// En tabell som är inläst men inte publicerad kan innehålla valutor som ännu inte finns i CurrencyRegistry.
+// Den har då en egen layout (valutan för varje index); registret ger valutorna löpnummer först när tabellen publiceras.
+public final class ExchangeRateTable {
+    private final int size;
+    private final double[] rates;
+    private final long version;
+    private final java.util.Currency[] layout; // Null om index är registrets löpnummer
+
+    // Tom tabell där varje valuta bara kan växlas mot sig själv
+    public static ExchangeRateTable empty(int size) {
+        double[] rates = new double[size * size];
+        Arrays.fill(rates, Double.NaN);
+        for (int i = 0; i < size; i++) {
+            rates[i * size + i] = 1.0;
+        }
+        return new ExchangeRateTable(size, rates, 0, null);
+    }
+
+    // Full korskurstabell triangulerad via en basvaluta. unitsPerBase[i] är hur många enheter av valuta i
+    // som en enhet basvaluta motsvarar (NaN om okänd), så kursen från i till j blir unitsPerBase[j] / unitsPerBase[i].
+    public static ExchangeRateTable fromBaseRates(int base, double[] unitsPerBase) {
+        int size = unitsPerBase.length;
+        if (unitsPerBase[base] != 1.0) {
+            throw new IllegalArgumentException("Basvalutans kurs måste vara 1");
+        }
+        ExchangeRateTable table = empty(size);
+        for (int from = 0; from < size; from++) {
+            double fromRate = unitsPerBase[from];
+            if (Double.isNaN(fromRate)) {
+                continue;
+            }
+            if (!(fromRate > 0) || Double.isInfinite(fromRate)) {
+                throw new IllegalArgumentException("Ogiltig växelkurs: " + fromRate);
+            }
+            for (int to = 0; to < size; to++) {
+                if (from != to) {
+                    table.rates[from * size + to] = unitsPerBase[to] / fromRate;
+                }
+            }
+        }
+        return table;
+    }
+
+    private ExchangeRateTable(int size, double[] rates, long version, java.util.Currency[] layout) {
+        this.size = size;
+        this.rates = rates;
+        this.version = version;
+        this.layout = layout;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Kursen från en valuta till en annan, eller NaN om den saknas eller valutan är nyare än tabellen
+    public double rate(int from, int to) {
+        if (from >= size || to >= size) {
+            return Double.NaN;
+        }
+        return rates[from * size + to];
+    }
+
+    public boolean hasRate(int from, int to) {
+        return !Double.isNaN(rate(from, to));
+    }
+
+    // Samma kurser i en större tabell, med plats för nyregistrerade valutor
+    ExchangeRateTable withSize(int newSize) {
+        if (newSize <= size) {
+            return this;
+        }
+        ExchangeRateTable larger = empty(newSize);
+        for (int from = 0; from < size; from++) {
+            System.arraycopy(rates, from * size, larger.rates, from * newSize, size);
+        }
+        return new ExchangeRateTable(newSize, larger.rates, version + 1, layout);
+    }
+
+    // Samma kurser med ett nytt versionsnummer, används när en hel tabell ersätter den gällande
+    ExchangeRateTable withVersion(long newVersion) {
+        return new ExchangeRateTable(size, rates, newVersion, layout);
+    }
+
+    // Samma kurser med en egen layout, för en tabell som inte är publicerad
+    ExchangeRateTable withLayout(java.util.Currency[] layout) {
+        return new ExchangeRateTable(size, rates, version, layout);
+    }
+
+    // Valutan för varje index, eller null om tabellen använder registrets löpnummer
+    java.util.Currency[] getLayout() {
+        return layout;
+    }
+
+    // Samma kurser flyttade till nya index: kursen från i till j hamnar på target[i], target[j] i en tabell med newSize valutor
+    ExchangeRateTable remap(int[] target, int newSize) {
+        ExchangeRateTable remapped = empty(newSize);
+        for (int from = 0; from < size; from++) {
+            for (int to = 0; to < size; to++) {
+                if (from != to) {
+                    remapped.rates[target[from] * newSize + target[to]] = rates[from * size + to];
+                }
+            }
+        }
+        return new ExchangeRateTable(newSize, remapped.rates, version, null);
+    }
+
+    // Ny tabell med en kurs ändrad, den här tabellen lämnas orörd
+    public ExchangeRateTable withRate(int from, int to, double rate) {
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Ogiltig växelkurs: " + rate);
+        }
+        if (from == to) {
+            throw new IllegalArgumentException("Växelkursen för en valuta mot sig själv är alltid 1");
+        }
+        double[] copy = rates.clone();
+        copy[from * size + to] = rate;
+        return new ExchangeRateTable(size, copy, version + 1, layout);
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Bevakar en lokal kursfil och läser in nya kurser när filen ändras, så att kassorna inte behöver startas om
+// för att få morgonens kurser. Filen läses och valideras i en egen bakgrundstråd; först när hela filen
+// är godkänd byts kurserna ut, och en trasig fil lämnar de gamla kurserna kvar.
+public class ExchangeRateWatcher implements AutoCloseable {
+    // Redigerare och filkopiering ger ofta flera händelser i rad, så vi väntar tills filen varit stilla en stund
+    public static final long DEFAULT_SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final java.util.Currency csvBase;
+    private final Consumer<ExchangeRateTable> target;
+    private final long settleMillis;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private volatile long lastReloadTime; // millisekunder sedan epoch, 0 om ingen inläsning lyckats
+    private volatile long lastReloadNanos;
+    private volatile long reloadCount;
+    private volatile long failedReloadCount;
+    private volatile Exception lastError;
+
+    // Läser filen direkt och gör kurserna gällande i CurrencyRegistry, och bevakar sedan filen
+    public ExchangeRateWatcher(Path file, java.util.Currency csvBase) throws IOException {
+        this(file, csvBase, CurrencyRegistry::setExchangeRates, DEFAULT_SETTLE_MILLIS);
+    }
+
+    public ExchangeRateWatcher(Path file, java.util.Currency csvBase, Consumer<ExchangeRateTable> target, long settleMillis) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.csvBase = csvBase;
+        this.target = target;
+        this.settleMillis = settleMillis;
+        if (!reload()) {
+            throw new IOException("Kunde inte läsa växelkursfil " + file, lastError);
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "växelkurser-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    // Läs in filen nu; returnerar false och behåller de gamla kurserna om filen är ogiltig
+    public synchronized boolean reload() {
+        long start = System.nanoTime();
+        try {
+            ExchangeRateTable table = ExchangeRateLoader.read(file, csvBase);
+            target.accept(table);
+            lastReloadNanos = System.nanoTime() - start;
+            lastReloadTime = System.currentTimeMillis();
+            lastError = null;
+            reloadCount++;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            lastError = e;
+            failedReloadCount++;
+            System.err.println("Kunde inte läsa in växelkurser från " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public long getLastReloadTime() {
+        return lastReloadTime;
+    }
+
+    public long getLastReloadDuration(TimeUnit unit) {
+        return unit.convert(lastReloadNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getReloadCount() {
+        return reloadCount;
+    }
+
+    public long getFailedReloadCount() {
+        return failedReloadCount;
+    }
+
+    // Felet från senaste misslyckade inläsningen, null om den senaste lyckades
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close(); // Väcker bevakningstråden, som då avslutas
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = concernsFile(key);
+                // Samla ihop händelser som kommer tätt efter varandra till en inläsning
+                while (changed && (key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS)) != null) {
+                    concernsFile(key);
+                }
+                if (changed && Files.exists(file)) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Bevakningen är avslutad
+        }
+    }
+
+    private boolean concernsFile(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Produktkatalog som läses direkt ur en minnesmappad ögonblicksbild skriven av CatalogSnapshotTool.
+// Att öppna katalogen tar lika lång tid oavsett storlek: ingenting läses in i förväg, och operativsystemet
+// hämtar bara de sidor som faktiskt används. Uppslag ger MappedProduct-vyer över filen i stället för
+// färdiga Product- och Money-objekt. Vyerna är nya vid varje uppslag, så produktgrupper som en artikel ingår i
+// sparas här per artikel, och alla vyer av artikeln ser samma grupper.
+//
+// Filformat (big-endian):
+//   huvud:     magic "RKK1", antal artiklar, hashtabellens storlek, antal valutor, valutakoder (4 byte per valuta)
+//   hashtabell: tableSize poster à 12 byte (streckkod, artikelnummer), streckkod 0 betyder tom plats
+//   artiklar:  count poster à 24 byte (streckkod, pris i minsta enhet, namnets position, namnets längd, valuta)
+//   namn:      UTF-8, lika namn lagras en gång
+// Samma hashfunktion och sondering som ProductCatalog används, så tabellen kan läsas utan att byggas om.
+public class MappedCatalog implements AutoCloseable {
+    static final int MAGIC = 0x524B4B31; // "RKK1"
+    static final int HEADER_BYTES = 16;
+    static final int CURRENCY_BYTES = 4;
+    static final int SLOT_BYTES = 12;
+    static final int RECORD_BYTES = 24;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int mask;
+    private final java.util.Currency[] currencies;
+    private final int tableOffset;
+    private final int recordOffset;
+    private final Map<Integer, List<ProductGroup>> groups = new ConcurrentHashMap<>(); // Oföränderliga listor per artikel
+
+    public MappedCatalog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Katalogen är för stor för att mappas: " + file);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Inte en katalogfil: " + file);
+            }
+            this.count = buffer.getInt(4);
+            int tableSize = buffer.getInt(8);
+            this.mask = tableSize - 1;
+            this.currencies = new java.util.Currency[buffer.getInt(12)];
+            byte[] code = new byte[3];
+            for (int i = 0; i < currencies.length; i++) {
+                buffer.get(HEADER_BYTES + i * CURRENCY_BYTES, code);
+                currencies[i] = java.util.Currency.getInstance(new String(code, StandardCharsets.US_ASCII));
+            }
+            this.tableOffset = tableOffset(currencies.length);
+            this.recordOffset = tableOffset + tableSize * SLOT_BYTES;
+            if (Integer.bitCount(tableSize) != 1 || (long) recordOffset + (long) count * RECORD_BYTES > size) {
+                throw new IOException("Katalogfilen är trasig: " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Produkten med streckkoden, eller null om den inte finns i katalogen
+    public Product lookup(long barcode) {
+        int record = recordOf(barcode);
+        return record < 0 ? null : new MappedProduct(this, record);
+    }
+
+    // Artikelns nummer i filen, eller -1 om streckkoden inte finns
+    public int recordOf(long barcode) {
+        if (barcode <= 0) {
+            return -1;
+        }
+        for (int i = ProductCatalog.hash(barcode) & mask; ; i = (i + 1) & mask) {
+            int position = tableOffset + i * SLOT_BYTES;
+            long key = buffer.getLong(position);
+            if (key == barcode) {
+                return buffer.getInt(position + 8);
+            }
+            if (key == 0) {
+                return -1;
+            }
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getBarcode(int record) {
+        return buffer.getLong(recordOffset + record * RECORD_BYTES);
+    }
+
+    public long getPriceMinorUnits(int record) {
+        return buffer.getLong(recordOffset + record * RECORD_BYTES + 8);
+    }
+
+    public java.util.Currency getCurrency(int record) {
+        return currencies[buffer.getShort(recordOffset + record * RECORD_BYTES + 22)];
+    }
+
+    public Money getPrice(int record) {
+        return Money.ofMinorUnits(getPriceMinorUnits(record), getCurrency(record));
+    }
+
+    public String getName(int record) {
+        int position = recordOffset + record * RECORD_BYTES;
+        byte[] name = new byte[Short.toUnsignedInt(buffer.getShort(position + 20))];
+        buffer.get(buffer.getInt(position + 16), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public List<ProductGroup> getGroups(int record) {
+        return groups.getOrDefault(record, List.of());
+    }
+
+    // Listan byts ut vid varje ändring, så att en kassa som läser grupperna aldrig ser en halvändrad lista
+    void joinGroup(int record, ProductGroup group) {
+        groups.compute(record, (key, current) -> {
+            if (current != null && current.contains(group)) {
+                return current;
+            }
+            List<ProductGroup> updated = current == null ? new ArrayList<>(1) : new ArrayList<>(current);
+            updated.add(group);
+            return List.copyOf(updated);
+        });
+    }
+
+    void leaveGroup(int record, ProductGroup group) {
+        groups.computeIfPresent(record, (key, current) -> {
+            List<ProductGroup> updated = new ArrayList<>(current);
+            updated.remove(group);
+            return updated.isEmpty() ? null : List.copyOf(updated);
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Hashtabellen börjar på en jämn 8-byteposition efter huvudet och valutakoderna
+    static int tableOffset(int currencyCount) {
+        return (HEADER_BYTES + currencyCount * CURRENCY_BYTES + 7) & ~7;
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.List;
+
+// Vy över en artikel i en MappedCatalog. Namn och pris läses ur filen vid varje anrop i stället för att lagras.
+// Flera uppslag på samma streckkod ger olika vyer, så vyerna jämförs med equals: två vyer är lika om de
+// pekar på samma artikel i samma katalog. Det gör att kvitton och rabatter behandlar dem som samma produkt.
+// Gruppmedlemskapet ligger i katalogen per artikel, så en grupprabatt gäller varje vy av en artikel i gruppen.
+final class MappedProduct extends Product {
+    private final MappedCatalog catalog;
+    private final int record;
+
+    MappedProduct(MappedCatalog catalog, int record) {
+        super(null, null, catalog.getBarcode(record));
+        this.catalog = catalog;
+        this.record = record;
+    }
+
+    @Override
+    public String getName() {
+        return catalog.getName(record);
+    }
+
+    @Override
+    public Money getPrice() {
+        return catalog.getPrice(record);
+    }
+
+    @Override
+    public List<ProductGroup> getGroups() {
+        return catalog.getGroups(record);
+    }
+
+    @Override
+    public boolean isInGroup(ProductGroup group) {
+        return catalog.getGroups(record).contains(group);
+    }
+
+    @Override
+    void joinGroup(ProductGroup group) {
+        catalog.joinGroup(record, group);
+    }
+
+    @Override
+    void leaveGroup(ProductGroup group) {
+        catalog.leaveGroup(record, group);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MappedProduct)) {
+            return false;
+        }
+        MappedProduct other = (MappedProduct) o;
+        return catalog == other.catalog && record == other.record;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(catalog) + record;
+    }
+}
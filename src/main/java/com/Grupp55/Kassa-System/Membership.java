@@ -1,29 +1,102 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Poängen kan ändras från flera kassor samtidigt, t.ex. ett familjekonto på en lördag.
+// Intjänade poäng samlas i en LongAdder, så kassor som tjänar poäng samtidigt inte slåss om samma räknare.
+// Saldot som kan lösas in ligger i en AtomicLong och minskas med compareAndSet, så det aldrig blir övertrasserat.
+// Intjänade poäng flyttas över till saldot först när saldot inte räcker för en inlösen. Under en överföring
+// finns poängen varken i räknaren eller i saldot, så transfers räknar pågående överföringar och en inlösen
+// nekas först när inga intjänade poäng återstår, ingen överföring pågår och saldot är oförändrat. Det läses i den
+// ordningen: en överföring räknas upp innan den tömmer räknaren och räknas ned först när saldot har ökat, så
+// poäng som inte syns i räknaren syns antingen i transfers eller i saldot.
+// Med en PointsLedger bokförs varje ändring också som en händelse, och saldot läses från poängboken vid start.
+// Då går varje intjäning genom poängbokens lås, så samtidiga intjäningar utan kö gäller bara utan poängbok.
+// Kan en inlösen inte bokföras har poängboken redan tagit bort händelsen, och poängen läggs tillbaka här.
 public class Membership {
     private Customer member;
-    private int points;
+    private final AtomicLong balance = new AtomicLong();
+    private final LongAdder accrued = new LongAdder(); // Alltid >= 0, avdrag går direkt mot saldot
+    private final AtomicInteger transfers = new AtomicInteger(); // Överföringar från accrued till balance som pågår
+    private final PointsLedger ledger; // Null om poängen bara finns i minnet
+    private final String memberId;
 
     public Membership(Customer member) {
         this.member = member;
-        this.points = 0;
+        this.ledger = null;
+        this.memberId = null;
     }
 
-    public void addPoints(int points) {
-        this.points += points;
+    // Medlemmen identifieras i poängboken med sitt personnummer
+    public Membership(Customer member, PointsLedger ledger) {
+        this.member = member;
+        this.ledger = ledger;
+        this.memberId = MembershipRegistry.normalizePersonalId(member.getPersonalId());
+        if (memberId == null) {
+            throw new IllegalArgumentException("Medlemmen saknar personnummer och kan inte bokföras");
+        }
+        balance.set(ledger.getBalance(memberId));
     }
 
-    public boolean redeemPoints(int pointsToRedeem) {
-        if (points >= pointsToRedeem) {
-            points -= pointsToRedeem;
-            return true;
+    public void addPoints(long points) {
+        record(PointsLedger.ACCRUE, points);
+        if (points >= 0) {
+            accrued.add(points);
+        } else {
+            balance.addAndGet(points); // Korrigeringar är sällsynta och får dra saldot under noll
         }
-        return false;
     }
 
-    public int getPoints() {
-        return points;
+    // Löser in poäng om saldot räcker; två kassor kan aldrig lösa in samma poäng
+    public boolean redeemPoints(long pointsToRedeem) {
+        if (pointsToRedeem < 0) {
+            throw new IllegalArgumentException("Antal poäng att lösa in får inte vara negativt: " + pointsToRedeem);
+        }
+        while (true) {
+            long current = balance.get();
+            if (current < pointsToRedeem) {
+                // Saldot räcker inte, men intjänade poäng som inte flyttats över kan göra det
+                transfers.incrementAndGet();
+                long moved = accrued.sumThenReset();
+                balance.addAndGet(moved);
+                transfers.decrementAndGet();
+                if (moved != 0) {
+                    continue;
+                }
+                if (accrued.sum() == 0 && transfers.get() == 0 && balance.get() == current) {
+                    return false; // Inga poäng är på väg till saldot från en annan kassa
+                }
+                Thread.onSpinWait();
+            } else if (balance.compareAndSet(current, current - pointsToRedeem)) {
+                try {
+                    record(PointsLedger.REDEEM, pointsToRedeem);
+                } catch (UncheckedIOException e) {
+                    balance.addAndGet(pointsToRedeem); // Inlösen som inte kunde bokföras räknas inte
+                    throw e;
+                }
+                return true;
+            }
+        }
+    }
+
+    public long getPoints() {
+        return balance.get() + accrued.sum();
     }
 
     public Customer getMember() { // Fix för att använda fältet 'member'
         return member;
     }
+
+    private void record(byte type, long points) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.append(type, memberId, points);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,283 @@
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Slår upp ett medlemskap på kundens personnummer, telefonnummer eller e-post, t.ex. när kunden legitimerar sig
+// i början av ett köp. Varje nyckel har ett eget index som är uppdelat på flera ConcurrentHashMaps, så att
+// miljontals medlemmar inte ligger i en enda tabell som måste växa i ett svep, och kassor som registrerar
+// medlemmar samtidigt sprids över olika tabeller.
+//
+// Telefonnummer och e-post normaliseras innan de indexeras, så "070-123 45 67" och "+46 70 123 45 67" är samma nyckel.
+// Registret lyssnar på kundens nycklar, så att indexen följer med när t.ex. Customer.setEmail anropas.
+// En nyckel tillhör högst en medlem; en ändring till en nyckel som redan används indexeras inte, och medlemmen
+// finns då kvar under sin gamla nyckel.
+public class MembershipRegistry {
+    private static final int DEFAULT_SHARDS = 64;
+
+    private final Index byPersonalId;
+    private final Index byPhoneNumber;
+    private final Index byEmail;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public MembershipRegistry() {
+        this(DEFAULT_SHARDS, 0);
+    }
+
+    // expectedMembers används för att dimensionera tabellerna från början och undvika omhashning vid inläsning
+    public MembershipRegistry(int shards, int expectedMembers) {
+        if (shards <= 0 || Integer.bitCount(shards) != 1) {
+            throw new IllegalArgumentException("Antal delar måste vara en tvåpotens: " + shards);
+        }
+        int perShard = Math.max(expectedMembers / shards, 16);
+        this.byPersonalId = new Index(shards, perShard);
+        this.byPhoneNumber = new Index(shards, perShard);
+        this.byEmail = new Index(shards, perShard);
+    }
+
+    // Returnerar false om medlemskapet redan finns i registret
+    public boolean register(Membership membership) {
+        Customer customer = membership.getMember();
+        if (customer == null) {
+            throw new IllegalArgumentException("Medlemskapet saknar kund");
+        }
+        synchronized (membership) {
+            if (registration(customer, membership) != null) {
+                return false;
+            }
+            // Lyssnaren installeras innan nycklarna läses, så att en ändring under registreringen inte går förlorad.
+            // Den flyttar inga nycklar förrän registreringen är klar, eftersom den väntar på samma lås.
+            Registration registration = new Registration(this, membership);
+            customer.addKeyListener(registration);
+            String personalId = normalizePersonalId(customer.getPersonalId());
+            String phoneNumber = normalizePhoneNumber(customer.getPhoneNumber());
+            String email = normalizeEmail(customer.getEmail());
+            try {
+                if (personalId == null && phoneNumber == null && email == null) {
+                    throw new IllegalArgumentException("Kunden saknar personnummer, telefonnummer och e-post");
+                }
+                claim(byPersonalId, personalId, membership, "Personnumret används redan av en annan medlem: " + customer.getPersonalId());
+                claim(byPhoneNumber, phoneNumber, membership, "Telefonnumret används redan av en annan medlem: " + customer.getPhoneNumber());
+                claim(byEmail, email, membership, "E-postadressen används redan av en annan medlem: " + customer.getEmail());
+            } catch (IllegalArgumentException e) {
+                customer.removeKeyListener(registration);
+                byPersonalId.remove(personalId, membership);
+                byPhoneNumber.remove(phoneNumber, membership);
+                byEmail.remove(email, membership);
+                throw e;
+            }
+            registration.keys[Customer.Key.PERSONAL_ID.ordinal()] = personalId;
+            registration.keys[Customer.Key.PHONE_NUMBER.ordinal()] = phoneNumber;
+            registration.keys[Customer.Key.EMAIL.ordinal()] = email;
+            registration.active = true;
+
+            // En nyckel som ändrades mellan läsningen och indexeringen ersätts med kundens nuvarande
+            keyChanged(registration, Customer.Key.PERSONAL_ID, customer.getPersonalId());
+            keyChanged(registration, Customer.Key.PHONE_NUMBER, customer.getPhoneNumber());
+            keyChanged(registration, Customer.Key.EMAIL, customer.getEmail());
+            size.incrementAndGet();
+            return true;
+        }
+    }
+
+    public boolean unregister(Membership membership) {
+        Customer customer = membership.getMember();
+        if (customer == null) {
+            return false;
+        }
+        synchronized (membership) {
+            Registration registration = registration(customer, membership);
+            if (registration == null) {
+                return false;
+            }
+            customer.removeKeyListener(registration);
+            registration.active = false;
+            // Nycklarna som faktiskt är indexerade, vilka kan vara äldre än kundens om en ändring krockade
+            byPersonalId.remove(registration.keys[Customer.Key.PERSONAL_ID.ordinal()], membership);
+            byPhoneNumber.remove(registration.keys[Customer.Key.PHONE_NUMBER.ordinal()], membership);
+            byEmail.remove(registration.keys[Customer.Key.EMAIL.ordinal()], membership);
+            size.decrementAndGet();
+            return true;
+        }
+    }
+
+    public Membership findByPersonalId(String personalId) {
+        return byPersonalId.get(normalizePersonalId(personalId));
+    }
+
+    public Membership findByPhoneNumber(String phoneNumber) {
+        return byPhoneNumber.get(normalizePhoneNumber(phoneNumber));
+    }
+
+    public Membership findByEmail(String email) {
+        return byEmail.get(normalizeEmail(email));
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Flyttar medlemskapet från den indexerade nyckeln till kundens nya i det index som nyckeln hör till.
+    // Den gamla nyckeln släpps först när den nya är tagen, så att medlemmen aldrig försvinner ur indexet.
+    private void keyChanged(Registration registration, Customer.Key key, String newValue) {
+        synchronized (registration.membership) {
+            if (!registration.active) {
+                return; // Registreringen misslyckades eller är borttagen; ändringen hann starta innan dess
+            }
+            String oldKey = registration.keys[key.ordinal()];
+            String newKey = normalize(key, newValue);
+            if (java.util.Objects.equals(oldKey, newKey)) {
+                return;
+            }
+            Index index = index(key);
+            Membership existing = index.putIfAbsent(newKey, registration.membership);
+            if (existing == null || existing == registration.membership) {
+                index.remove(oldKey, registration.membership);
+                registration.keys[key.ordinal()] = newKey;
+            }
+        }
+    }
+
+    // Registrets lyssnare hos kunden, eller null om medlemskapet inte är registrerat här
+    private Registration registration(Customer customer, Membership membership) {
+        for (Customer.KeyListener listener : customer.keyListeners()) {
+            if (listener instanceof Registration && ((Registration) listener).registry == this && ((Registration) listener).membership == membership) {
+                return (Registration) listener;
+            }
+        }
+        return null;
+    }
+
+    private static void claim(Index index, String key, Membership membership, String conflict) {
+        Membership existing = index.putIfAbsent(key, membership);
+        if (existing != null && existing != membership) {
+            throw new IllegalArgumentException(conflict);
+        }
+    }
+
+    private Index index(Customer.Key key) {
+        switch (key) {
+            case PERSONAL_ID:
+                return byPersonalId;
+            case PHONE_NUMBER:
+                return byPhoneNumber;
+            default:
+                return byEmail;
+        }
+    }
+
+    private static String normalize(Customer.Key key, String value) {
+        switch (key) {
+            case PERSONAL_ID:
+                return normalizePersonalId(value);
+            case PHONE_NUMBER:
+                return normalizePhoneNumber(value);
+            default:
+                return normalizeEmail(value);
+        }
+    }
+
+    // "19900101-1234" och "199001011234" är samma nyckel. Null om inget återstår.
+    static String normalizePersonalId(String personalId) {
+        if (personalId == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(personalId.length());
+        for (int i = 0; i < personalId.length(); i++) {
+            char c = personalId.charAt(i);
+            if (c != '-' && c != '+' && !Character.isWhitespace(c)) {
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+        return normalized.length() == 0 ? null : normalized.toString();
+    }
+
+    // Bara siffror; ett ledande + blir 00, och svenskt landsnummer (0046) blir en inledande nolla
+    static String normalizePhoneNumber(String phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phoneNumber.length() + 1);
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '+' && digits.length() == 0) {
+                digits.append("00");
+            }
+        }
+        if (digits.length() > 4 && digits.indexOf("0046") == 0) {
+            digits.replace(0, 4, "0");
+        }
+        return digits.length() == 0 ? null : digits.toString();
+    }
+
+    static String normalizeEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        return email.strip().toLowerCase(Locale.ROOT);
+    }
+
+    // Ett index för en nyckel, uppdelat på flera tabeller. Null-nycklar indexeras inte.
+    private static final class Index {
+        private final ConcurrentHashMap<String, Membership>[] shards;
+        private final int shift;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Index(int shardCount, int initialCapacity) {
+            shards = new ConcurrentHashMap[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new ConcurrentHashMap<>(initialCapacity);
+            }
+            shift = 32 - Integer.numberOfTrailingZeros(shardCount);
+        }
+
+        Membership get(String key) {
+            return key == null ? null : shard(key).get(key);
+        }
+
+        Membership putIfAbsent(String key, Membership membership) {
+            return key == null ? null : shard(key).putIfAbsent(key, membership);
+        }
+
+        void remove(String key, Membership membership) {
+            if (key != null) {
+                shard(key).remove(key, membership);
+            }
+        }
+
+        // Delen väljs med hashens höga bitar, så att den inte samverkar med tabellens egna hinkar som använder de låga
+        private ConcurrentHashMap<String, Membership> shard(String key) {
+            return shift == 32 ? shards[0] : shards[(key.hashCode() * 0x9E3779B9) >>> shift];
+        }
+    }
+
+    // Kundens lyssnare för ett medlemskap, med de nycklar som medlemmen är indexerad under (per Customer.Key).
+    // Lika om registret och medlemskapet är desamma, så att den kan tas bort igen. keys skyddas av medlemskapets lås.
+    private static final class Registration implements Customer.KeyListener {
+        private final MembershipRegistry registry;
+        private final Membership membership;
+        private final String[] keys = new String[Customer.Key.values().length];
+        private boolean active; // Falskt tills nycklarna är indexerade och efter unregister, så att sena ändringar inte indexeras
+
+        Registration(MembershipRegistry registry, Membership membership) {
+            this.registry = registry;
+            this.membership = membership;
+        }
+
+        @Override
+        public void keyChanged(Customer customer, Customer.Key key, String oldValue, String newValue) {
+            registry.keyChanged(this, key, newValue);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Registration && ((Registration) o).registry == registry && ((Registration) o).membership == membership;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(registry) * 31 + System.identityHashCode(membership);
+        }
+    }
+}
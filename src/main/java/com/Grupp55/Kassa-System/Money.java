@@ -3,28 +3,32 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class Money {
-    private double amount;
-    private Currency currency;
+    // Beloppet lagras exakt i minsta enhet (öre/cent) för att undvika avrundningsfel i flyttal
+    private final long minorUnits;
+    private final Currency currency;
 
-    // Statisk växelkurskarta som exempel (fasta växelkurser)
-    private static final Map<String, Double> exchangeRates = new HashMap<>();
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L};
 
-    static {
-        exchangeRates.put("SEK-USD", 0.11);
-        exchangeRates.put("USD-SEK", 9.1);
-        exchangeRates.put("SEK-EUR", 0.095);
-        exchangeRates.put("EUR-SEK", 10.5);
-        exchangeRates.put("USD-EUR", 0.86);
-        exchangeRates.put("EUR-USD", 1.16);
+    public Money(double amount, Currency currency) {
+        this(toMinorUnits(amount, currency), currency);
     }
 
-    public Money(double amount, Currency currency) {
-        this.amount = amount;
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
         this.currency = currency;
     }
 
+    // Skapa ett belopp direkt från minsta enhet, t.ex. 1995 öre = 19.95 SEK
+    public static Money ofMinorUnits(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
     public double getAmount() {
-        return amount;
+        return (double) minorUnits / scaleOf(currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
     }
 
     public Currency getCurrency() {
@@ -34,75 +38,145 @@ public class Money {
     // Metod för att konvertera belopp till en annan valuta
     public Money convertToCurrency(Currency targetCurrency) {
         if (this.currency.equals(targetCurrency)) {
-            return new Money(this.amount, this.currency);
+            return this; // Money är oföränderligt, så samma objekt kan återanvändas
         }
-
-        String exchangeKey = this.currency.getCurrencyCode() + "-" + targetCurrency.getCurrencyCode();
-        Double rate = exchangeRates.get(exchangeKey);
-
-        if (rate == null) {
-            throw new IllegalArgumentException("Växelkurs ej tillgänglig för " + this.currency + " till " + targetCurrency);
-        }
-
-        return new Money(this.amount * rate, targetCurrency);
+        return new Money(convertMinorUnits(minorUnits, currency, targetCurrency), targetCurrency);
     }
 
     // Metod för att addera pengar med valutakonvertering
     public Money add(Money other) {
-        if (!this.currency.equals(other.getCurrency())) {
-            Money convertedOther = other.convertToCurrency(this.currency);
-            return new Money(this.amount + convertedOther.getAmount(), this.currency);
+        if (other.minorUnits == 0) {
+            return this;
         }
-        return new Money(this.amount + other.getAmount(), this.currency);
+        return new Money(minorUnits + other.minorUnitsIn(currency), currency);
     }
 
     // Metod för att subtrahera pengar med valutakonvertering
     public Money subtract(Money other) {
-        if (!this.currency.equals(other.getCurrency())) {
-            Money convertedOther = other.convertToCurrency(this.currency);
-            return new Money(this.amount - convertedOther.getAmount(), this.currency);
+        if (other.minorUnits == 0) {
+            return this;
+        }
+        return new Money(minorUnits - other.minorUnitsIn(currency), currency);
+    }
+
+    // Beloppet uttryckt i en annan valutas minsta enhet, utan att skapa något nytt objekt
+    long minorUnitsIn(Currency targetCurrency) {
+        if (currency.equals(targetCurrency)) {
+            return minorUnits;
+        }
+        return convertMinorUnits(minorUnits, currency, targetCurrency);
+    }
+
+    // Växelkurserna hämtas ur CurrencyRegistry, samma tabell som Currency använder
+    static long convertMinorUnits(long minorUnits, Currency fromCurrency, Currency toCurrency) {
+        return convertMinorUnits(minorUnits, fromCurrency, toCurrency, CurrencyRegistry.getExchangeRates());
+    }
+
+    // Valutorna slås upp i registret vid varje anrop; loopar som växlar många belopp använder indexvarianten nedan
+    static long convertMinorUnits(long minorUnits, Currency fromCurrency, Currency toCurrency, ExchangeRateTable rates) {
+        double rate = CurrencyRegistry.getExchangeRate(rates, fromCurrency, toCurrency);
+        return convertMinorUnits(minorUnits, rate, scaleOf(fromCurrency), scaleOf(toCurrency));
+    }
+
+    // Som ovan med valutornas löpnummer i CurrencyRegistry, t.ex. kvittots valutahinkar. rates måste vara publicerad
+    // (hämtad ur registret), så att löpnumren är tabellens index.
+    static long convertMinorUnits(long minorUnits, int fromIndex, int toIndex, ExchangeRateTable rates) {
+        double rate = fromIndex == toIndex ? 1.0 : fromIndex < 0 || toIndex < 0 ? Double.NaN : rates.rate(fromIndex, toIndex);
+        if (Double.isNaN(rate)) {
+            throw new IllegalArgumentException("Växelkurs ej tillgänglig för valuta " + fromIndex + " till " + toIndex);
+        }
+        return convertMinorUnits(minorUnits, rate, scaleOf(CurrencyRegistry.currencyAt(fromIndex)), scaleOf(CurrencyRegistry.currencyAt(toIndex)));
+    }
+
+    private static long convertMinorUnits(long minorUnits, double rate, long fromScale, long toScale) {
+        double amount = (double) minorUnits / fromScale * rate;
+        return Math.round(amount * toScale);
+    }
+
+    static long toMinorUnits(double amount, Currency currency) {
+        return Math.round(amount * scaleOf(currency));
+    }
+
+    // Antal minsta enheter per hel valutaenhet, t.ex. 100 öre per krona
+    static long scaleOf(Currency currency) {
+        int digits = currency == null ? 2 : currency.getDefaultFractionDigits();
+        return POWERS_OF_TEN[Math.max(digits, 0)];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
         }
-        return new Money(this.amount - other.getAmount(), this.currency);
+        Money other = (Money) o;
+        return minorUnits == other.minorUnits && java.util.Objects.equals(currency, other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + (currency == null ? 0 : currency.hashCode());
     }
 
     // Metod för att beräkna växel
     public Money calculateChange(double paymentAmount) {
-        if (paymentAmount < amount) {
+        long paymentMinorUnits = toMinorUnits(paymentAmount, currency);
+        if (paymentMinorUnits < minorUnits) {
             throw new IllegalArgumentException("Betalningen är mindre än totalbeloppet.");
         }
 
-        double changeAmount = paymentAmount - amount;
-        return new Money(changeAmount, this.currency);
+        return new Money(paymentMinorUnits - minorUnits, this.currency);
     }
 
-    // Metod för att beräkna få den minsta mängden mynt för hela beloppet
+    // Delar upp beloppet i valutans sedlar och mynt (se DenominationSet) utan att skapa några objekt.
+    // counts återanvänds mellan anropen; returnerar det som inte går att ge, t.ex. öre när minsta myntet är en krona.
+    public long changeInto(int[] counts) {
+        DenominationSet denominations = DenominationSet.forCurrency(currency);
+        if (denominations == null) {
+            throw new IllegalArgumentException("Inga valörer registrerade för " + currency);
+        }
+        return denominations.changeInto(minorUnits, counts);
+    }
+
+    // Metod för att beräkna få den minsta mängden mynt för hela beloppet.
+    // Antalet anges för varje valör, även de som inte behövs.
     public Map<Integer, Integer> calculateFewestCoins() {
-        Map<Integer, Integer> coins = new HashMap<>();
         int[] denominations = {20, 10, 5, 1}; // example denominations
-        int remainingAmount = (int) this.amount;
-
-        for (int coin : denominations) {
-            int count = remainingAmount / coin;
-            if (count > 0) {
-                coins.put(coin, count);
-                remainingAmount -= count * coin;
-            }
+        long scale = scaleOf(currency);
+        long[] minorUnitValues = new long[denominations.length];
+        for (int i = 0; i < denominations.length; i++) {
+            minorUnitValues[i] = denominations[i] * scale;
+        }
+        DenominationSet set = DenominationSet.of(currency, minorUnitValues);
+        int[] counts = new int[set.size()];
+        set.changeInto(minorUnits, counts); // Ören under en hel krona räknas inte, som tidigare
+
+        Map<Integer, Integer> coins = new HashMap<>();
+        for (int i = 0; i < set.size(); i++) {
+            coins.put((int) (set.denomination(i) / scale), counts[i]);
         }
         return coins;
     }
 
-    // Metod för att beräkna få den minsta mängden mynt för decimala värden (t.ex. 0.5 SEK)
+    // Metod för att beräkna få den minsta mängden mynt för decimala värden (t.ex. 0.5 SEK).
+    // Räknas i minsta enhet, så att t.ex. 0.3 inte blir 0.29999 och tappar ett mynt.
     public Map<Double, Integer> calculateFewestCoinsForDecimals() {
-        Map<Double, Integer> coins = new HashMap<>();
         double[] denominations = {1.0, 0.5, 0.2, 0.1, 0.05, 0.01}; // example denominations
-        double remainingAmount = this.amount;
-
-        for (double coin : denominations) {
-            int count = (int) (remainingAmount / coin);
-            if (count > 0) {
-                coins.put(coin, count);
-                remainingAmount -= count * coin;
-            }
+        long scale = scaleOf(currency);
+        long[] minorUnitValues = java.util.Arrays.stream(denominations)
+                .mapToLong(coin -> Math.round(coin * scale))
+                .filter(value -> value > 0) // Valörer under valutans minsta enhet finns inte
+                .distinct()
+                .toArray();
+        DenominationSet set = DenominationSet.of(currency, minorUnitValues);
+        int[] counts = new int[set.size()];
+        set.changeInto(minorUnits, counts);
+
+        Map<Double, Integer> coins = new HashMap<>();
+        for (int i = 0; i < set.size(); i++) {
+            coins.put((double) set.denomination(i) / scale, counts[i]);
         }
         return coins;
     }
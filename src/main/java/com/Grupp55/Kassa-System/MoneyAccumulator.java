@@ -0,0 +1,61 @@
+import java.util.Currency;
+
+// Föränderlig summa i minsta enhet (öre/cent) som kan återanvändas mellan beräkningar.
+// Till skillnad från Money.add skapas inga nya objekt när rader summeras.
+public class MoneyAccumulator {
+    private Currency currency;
+    private long scale;
+    private long minorUnits;
+
+    public MoneyAccumulator(Currency currency) {
+        reset(currency);
+    }
+
+    public void reset() {
+        minorUnits = 0;
+    }
+
+    // Nollställ och byt valuta, så att samma ackumulator kan användas för en ny summering
+    public void reset(Currency currency) {
+        this.currency = currency;
+        this.scale = Money.scaleOf(currency);
+        this.minorUnits = 0;
+    }
+
+    public MoneyAccumulator add(Money money) {
+        minorUnits += money.minorUnitsIn(currency);
+        return this;
+    }
+
+    public MoneyAccumulator subtract(Money money) {
+        minorUnits -= money.minorUnitsIn(currency);
+        return this;
+    }
+
+    // Lägg till ett belopp som redan är uttryckt i ackumulatorns valuta, avrundat till närmaste minsta enhet
+    public MoneyAccumulator addAmount(double amount) {
+        minorUnits += Math.round(amount * scale);
+        return this;
+    }
+
+    public MoneyAccumulator addMinorUnits(long minorUnits) {
+        this.minorUnits += minorUnits;
+        return this;
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public double getAmount() {
+        return (double) minorUnits / scale;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public Money toMoney() {
+        return Money.ofMinorUnits(minorUnits, currency);
+    }
+}
@@ -0,0 +1,460 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+// Poängbok: varje intjäning och inlösen skrivs som en händelse sist i en segmentfil, så att saldona kan
+// återskapas efter en omstart och varje poäng kan spåras. Händelser samlas i en buffert och synkas till disk
+// i grupp, som i ReceiptJournal. När ett segment når maxSegmentBytes påbörjas ett nytt, och då skrivs en
+// ögonblicksbild med alla saldon. Vid start läses den senaste hela ögonblicksbilden och bara segmenten efter
+// den spelas upp, så starttiden beror på segmentstorleken och inte på hur många år historiken omfattar.
+// Gamla segment ligger kvar som historik; av ögonblicksbilderna sparas bara de senaste.
+//
+// En händelse räknas in i saldot först när den har lagts i bufferten. Misslyckas skrivningen som händelsen
+// utlöser skärs segmentet tillbaka, händelsen tas bort ur bufferten och saldot, och append kastar, så att
+// anroparen kan ångra den utan att den dyker upp igen vid nästa skrivning. Går inte segmentet att skära
+// tillbaka stängs poängboken, och saldona läses om från disk vid nästa start.
+//
+// Segment: "poang-00000001.segment". Varje post är en int med längden, en int med CRC32 och sedan typ,
+// tidpunkt (varint), medlems-id (varint-längd och UTF-8) och antal poäng (zigzag-varint).
+// Ögonblicksbild N ("poang-00000001.snapshot") innehåller saldona före segment N: "RKP1", antal medlemmar,
+// en post per medlem med id och saldo, och sist CRC32 för hela filen.
+public class PointsLedger implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1_000;
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 16L * 1024 * 1024;
+
+    public static final byte ACCRUE = 1;
+    public static final byte REDEEM = 2;
+
+    static final int SNAPSHOT_MAGIC = 0x524B5031; // "RKP1"
+
+    private static final String PREFIX = "poang-";
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final int SNAPSHOTS_KEPT = 2; // Den näst senaste används om den senaste är skadad
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int MAX_MEMBER_ID_BYTES = 256;
+
+    private final Path directory;
+    private final int batchSize;
+    private final long fsyncIntervalMillis;
+    private final long maxSegmentBytes;
+    private final Clock clock;
+
+    private Map<String, long[]> balances = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private int segmentSequence;
+    private long segmentBytes;
+    private int pendingEvents;
+    private long lastSyncMillis;
+    private long recoveredEvents;
+    private boolean failed; // En skrivning kunde inte återställas; poängboken tar inte emot fler händelser
+
+    public PointsLedger(Path directory) throws IOException {
+        this(directory, DEFAULT_BATCH_SIZE, DEFAULT_FSYNC_INTERVAL_MILLIS, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    public PointsLedger(Path directory, int batchSize, long fsyncIntervalMillis, long maxSegmentBytes) throws IOException {
+        this(directory, batchSize, fsyncIntervalMillis, maxSegmentBytes, Clock.systemDefaultZone());
+    }
+
+    PointsLedger(Path directory, int batchSize, long fsyncIntervalMillis, long maxSegmentBytes, Clock clock) throws IOException {
+        if (batchSize < 1 || fsyncIntervalMillis < 0 || maxSegmentBytes < 1) {
+            throw new IllegalArgumentException("Ogiltig konfiguration för poängboken");
+        }
+        this.directory = directory;
+        this.batchSize = batchSize;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.clock = clock;
+        this.lastSyncMillis = clock.millis();
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    public synchronized long getBalance(String memberId) {
+        long[] balance = balances.get(memberId);
+        return balance == null ? 0 : balance[0];
+    }
+
+    public synchronized int getMemberCount() {
+        return balances.size();
+    }
+
+    // Antal händelser som spelades upp när poängboken öppnades, dvs. de som inte redan fanns i en ögonblicksbild
+    public synchronized long getRecoveredEvents() {
+        return recoveredEvents;
+    }
+
+    public synchronized void accrue(String memberId, long points) throws IOException {
+        if (points < 0) {
+            throw new IllegalArgumentException("Antal poäng att tjäna in får inte vara negativt: " + points);
+        }
+        append(ACCRUE, memberId, points);
+    }
+
+    // Löser in poäng om saldot i poängboken räcker
+    public synchronized boolean redeem(String memberId, long points) throws IOException {
+        if (points < 0) {
+            throw new IllegalArgumentException("Antal poäng att lösa in får inte vara negativt: " + points);
+        }
+        if (getBalance(memberId) < points) {
+            return false;
+        }
+        append(REDEEM, memberId, points);
+        return true;
+    }
+
+    // Bokför en händelse utan att kontrollera saldot, t.ex. när Membership redan har dragit poängen
+    synchronized void append(byte type, String memberId, long points) throws IOException {
+        ensureOpen();
+        byte[] id = memberId.getBytes(StandardCharsets.UTF_8);
+        if (id.length == 0 || id.length > MAX_MEMBER_ID_BYTES) {
+            throw new IllegalArgumentException("Ogiltigt medlems-id: " + memberId);
+        }
+        if (buffer.remaining() < RECORD_HEADER_BYTES + 1 + 3 * 10 + id.length) {
+            writeBuffer(false);
+        }
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_BYTES);
+        buffer.put(type);
+        VarInt.putUnsigned(buffer, clock.millis());
+        VarInt.putUnsigned(buffer, id.length);
+        buffer.put(id);
+        VarInt.putSigned(buffer, points);
+        int length = buffer.position() - start - RECORD_HEADER_BYTES;
+        crc.reset();
+        crc.update(buffer.array(), start + RECORD_HEADER_BYTES, length);
+        buffer.putInt(start, length).putInt(start + Integer.BYTES, (int) crc.getValue());
+
+        apply(type, memberId, points);
+        segmentBytes += RECORD_HEADER_BYTES + length;
+        pendingEvents++;
+        if (pendingEvents >= batchSize || clock.millis() - lastSyncMillis >= fsyncIntervalMillis) {
+            try {
+                flush();
+            } catch (IOException e) {
+                // Händelsen är inte bokförd; tidigare händelser i bufferten skrivs vid nästa försök
+                buffer.position(start);
+                apply(type, memberId, -points);
+                segmentBytes -= RECORD_HEADER_BYTES + length;
+                pendingEvents--;
+                throw e;
+            }
+        }
+        if (segmentBytes >= maxSegmentBytes) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                // Händelsen är redan bokförd. segmentBytes nollställs först när ögonblicksbilden finns, så nästa
+                // händelse försöker igen med ett nytt segment
+                System.err.println("Kunde inte skriva ögonblicksbild av poängboken: " + e.getMessage());
+            }
+        }
+    }
+
+    // Skriv och synka alla väntande händelser direkt
+    public synchronized void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        ensureOpen();
+        writeBuffer(true);
+        pendingEvents = 0;
+        lastSyncMillis = clock.millis();
+    }
+
+    // Påbörjar ett nytt segment och skriver en ögonblicksbild av saldona före det, t.ex. vid dagsavslut
+    public synchronized void snapshot() throws IOException {
+        ensureOpen();
+        flush();
+        // Det nya segmentet öppnas innan det gamla stängs, så att poängboken alltid har ett segment att skriva i
+        FileChannel previous = channel;
+        channel = openSegment(segmentSequence + 1, 0);
+        segmentSequence++;
+        previous.close();
+        writeSnapshot(segmentSequence);
+        segmentBytes = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (!failed) {
+                flush();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    // Läser alla händelser i ett segment, t.ex. för att granska en medlems historik
+    public static List<Event> readSegment(Path segment) throws IOException {
+        List<Event> events = new ArrayList<>();
+        readEvents(segment, events::add);
+        return events;
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> segments = list(SEGMENT_SUFFIX);
+        TreeMap<Integer, Path> snapshots = list(SNAPSHOT_SUFFIX);
+        int first = 1;
+        for (Map.Entry<Integer, Path> snapshot : snapshots.descendingMap().entrySet()) {
+            Map<String, long[]> loaded = readSnapshot(snapshot.getValue());
+            if (loaded != null) {
+                balances = loaded;
+                first = snapshot.getKey();
+                break;
+            }
+        }
+
+        long validBytes = 0;
+        for (Map.Entry<Integer, Path> segment : segments.tailMap(first, true).entrySet()) {
+            validBytes = readEvents(segment.getValue(), event -> {
+                apply(event.type, event.memberId, event.points);
+                recoveredEvents++;
+            });
+            if (validBytes < Files.size(segment.getValue()) && !segment.getKey().equals(segments.lastKey())) {
+                throw new IOException("Skadat segment i poängboken: " + segment.getValue());
+            }
+        }
+
+        // Fortsätt i det senaste segmentet; en avbruten post i slutet skärs bort innan nya händelser skrivs
+        segmentSequence = segments.isEmpty() ? first : Math.max(segments.lastKey(), first);
+        channel = openSegment(segmentSequence, validBytes);
+        segmentBytes = validBytes;
+    }
+
+    // Läser händelserna i ett segment fram till slutet eller en avbruten post; returnerar antal giltiga byte
+    private static long readEvents(Path segment, java.util.function.Consumer<Event> action) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        CRC32 checksum = new CRC32();
+        while (data.remaining() >= RECORD_HEADER_BYTES) {
+            int start = data.position();
+            int length = data.getInt();
+            int expected = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                data.position(start);
+                break;
+            }
+            checksum.reset();
+            checksum.update(data.array(), data.position(), length);
+            if ((int) checksum.getValue() != expected) {
+                data.position(start);
+                break;
+            }
+            ByteBuffer record = data.slice().limit(length);
+            data.position(data.position() + length);
+            try {
+                byte type = record.get();
+                if (type != ACCRUE && type != REDEEM) {
+                    throw new IOException("Okänd händelsetyp " + type + " i poängboken: " + segment);
+                }
+                long timestamp = VarInt.getUnsigned(record);
+                byte[] id = new byte[(int) VarInt.getUnsigned(record)];
+                record.get(id);
+                action.accept(new Event(type, timestamp, new String(id, StandardCharsets.UTF_8), VarInt.getSigned(record)));
+            } catch (BufferUnderflowException | IllegalStateException | NegativeArraySizeException e) {
+                throw new IOException("Felaktig post i poängboken: " + segment, e);
+            }
+        }
+        return data.position();
+    }
+
+    private void apply(byte type, String memberId, long points) {
+        long[] balance = balances.computeIfAbsent(memberId, k -> new long[1]);
+        balance[0] += type == REDEEM ? -points : points;
+    }
+
+    private void writeSnapshot(int sequence) throws IOException {
+        Path target = directory.resolve(fileName(sequence, SNAPSHOT_SUFFIX));
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+        out.putInt(SNAPSHOT_MAGIC).putInt(balances.size());
+        try (FileChannel snapshot = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, long[]> entry : balances.entrySet()) {
+                if (out.remaining() < 2 * 10 + MAX_MEMBER_ID_BYTES) {
+                    writeChecked(snapshot, out, checksum);
+                }
+                byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                VarInt.putUnsigned(out, id.length);
+                out.put(id);
+                VarInt.putSigned(out, entry.getValue()[0]);
+            }
+            writeChecked(snapshot, out, checksum);
+            out.putInt((int) checksum.getValue()).flip();
+            while (out.hasRemaining()) {
+                snapshot.write(out);
+            }
+            snapshot.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        TreeMap<Integer, Path> snapshots = list(SNAPSHOT_SUFFIX);
+        while (snapshots.size() > SNAPSHOTS_KEPT) {
+            Files.deleteIfExists(snapshots.pollFirstEntry().getValue());
+        }
+    }
+
+    private static void writeChecked(FileChannel channel, ByteBuffer out, CRC32 checksum) throws IOException {
+        out.flip();
+        checksum.update(out.array(), 0, out.limit());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // Null om filen inte är en hel ögonblicksbild, t.ex. efter ett avbrott mitt i skrivningen
+    private static Map<String, long[]> readSnapshot(Path snapshot) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(snapshot));
+        if (data.remaining() < 3 * Integer.BYTES || data.getInt(0) != SNAPSHOT_MAGIC) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(data.array(), 0, data.limit() - Integer.BYTES);
+        if ((int) checksum.getValue() != data.getInt(data.limit() - Integer.BYTES)) {
+            return null;
+        }
+        data.position(Integer.BYTES);
+        int count = data.getInt();
+        data.limit(data.limit() - Integer.BYTES);
+        Map<String, long[]> balances = new HashMap<>(Math.max(count * 4 / 3 + 1, 16));
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[(int) VarInt.getUnsigned(data)];
+                data.get(id);
+                balances.put(new String(id, StandardCharsets.UTF_8), new long[] {VarInt.getSigned(data)});
+            }
+        } catch (BufferUnderflowException | IllegalStateException | NegativeArraySizeException e) {
+            return null;
+        }
+        return balances;
+    }
+
+    private TreeMap<Integer, Path> list(String suffix) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Integer.parseInt(name.substring(PREFIX.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    // Inte en av våra filer
+                }
+            }
+        }
+        return files;
+    }
+
+    private FileChannel openSegment(int sequence, long validBytes) throws IOException {
+        Path segment = directory.resolve(fileName(sequence, SEGMENT_SUFFIX));
+        FileChannel opened = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (opened.size() > validBytes) {
+                opened.truncate(validBytes);
+            }
+            opened.position(validBytes);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        return opened;
+    }
+
+    // Skriver bufferten sist i segmentet, och synkar om sync är satt. Misslyckas det skärs segmentet tillbaka
+    // till där skrivningen började och bufferten får tillbaka sitt innehåll, så att samma byte kan skrivas igen.
+    private void writeBuffer(boolean sync) throws IOException {
+        long position = channel.position();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            int end = buffer.limit();
+            buffer.limit(buffer.capacity()).position(end);
+            try {
+                channel.truncate(position);
+                channel.position(position);
+            } catch (IOException truncateFailure) {
+                failed = true;
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+        buffer.clear();
+    }
+
+    private static String fileName(int sequence, String suffix) {
+        return PREFIX + String.format("%08d", sequence) + suffix;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Poängboken är stängd");
+        }
+        if (failed) {
+            throw new IOException("Poängboken kunde inte återställas efter ett skrivfel och tar inte emot fler händelser");
+        }
+    }
+
+    // En händelse i poängboken
+    public static final class Event {
+        private final byte type;
+        private final long timestamp;
+        private final String memberId;
+        private final long points;
+
+        Event(byte type, long timestamp, String memberId, long points) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.memberId = memberId;
+            this.points = points;
+        }
+
+        // ACCRUE eller REDEEM
+        public byte getType() {
+            return type;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getMemberId() {
+            return memberId;
+        }
+
+        public long getPoints() {
+            return points;
+        }
+    }
+}
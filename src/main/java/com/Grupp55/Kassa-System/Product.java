@@ -1,10 +1,21 @@
+import java.util.ArrayList;
+import java.util.List;
+
 public class Product {
     private String name;
     private Money price;
+    private final long barcode; // EAN/SKU, 0 om produkten saknar streckkod
+    // Grupper som produkten ingår i, underhålls av ProductGroup
+    private final List<ProductGroup> groups = new ArrayList<>(1);
 
     public Product(String name, Money price) {
+        this(name, price, 0);
+    }
+
+    public Product(String name, Money price, long barcode) {
         this.name = name;
         this.price = price;
+        this.barcode = barcode;
     }
 
     public String getName() {
@@ -15,7 +26,30 @@ public class Product {
         return price;
     }
 
+    public long getBarcode() {
+        return barcode;
+    }
+
+    public List<ProductGroup> getGroups() {
+        return groups;
+    }
+
+    public boolean isInGroup(ProductGroup group) {
+        return groups.contains(group);
+    }
+
+    void joinGroup(ProductGroup group) {
+        if (!groups.contains(group)) {
+            groups.add(group);
+        }
+    }
+
+    void leaveGroup(ProductGroup group) {
+        groups.remove(group);
+    }
+
     public String display() {
-        return name + ": " + price.getAmount() + " " + price.getCurrency().getSymbol();
+        Money price = getPrice();
+        return getName() + ": " + price.getAmount() + " " + price.getCurrency().getSymbol();
     }
 }
@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Produktkatalog för miljontals artiklar, med uppslag på streckkod (EAN/SKU).
+// Varje artikel har en plats (slot) i ett antal parallella primitiva arrayer i stället för ett eget objekt:
+// pris i minsta enhet, valutans löpnummer i CurrencyRegistry och namn. Lika namn delar samma String om
+// inläsningen skickar samma objekt; CatalogSnapshotTool.readCsv gör det med en tabell som bara finns under inläsningen.
+// Streckkoden hittas via en öppen hashtabell med linjär sondering av long-nycklar, så ett uppslag
+// är några array-läsningar utan boxning.
+//
+// Product-objekt skapas först när en artikel slås upp och återanvänds sedan, så samma streckkod ger samma Product.
+// Katalogen byggs med add() innan den delas mellan trådar; uppslag kan sedan göras från flera kassor samtidigt,
+// men add() får inte anropas på en delad katalog. Nya priser ges i stället i en kopia (copy() och sedan add())
+// som publiceras i den delade katalogens ställe. En Product ändras aldrig, så en vara som redan skannats behåller
+// sitt pris på kvittot; en ändrad artikel får en ny Product i kopian, och övriga artiklar behåller sina.
+// Rabatter riktade mot en produkt matchar på streckkoden (se Discount), så de gäller även den nya Product.
+public class ProductCatalog {
+    private static final int MIN_CAPACITY = 16;
+    private static final double MAX_LOAD = 0.7;
+
+    private int size;
+    private long[] barcodes;
+    private String[] names;
+    private long[] prices;
+    private short[] currencies;
+    private AtomicReferenceArray<Product> products;
+
+    // Hashtabell: streckkod -> slot, där 0 i keys betyder tom plats
+    private long[] keys;
+    private int[] slots;
+    private int mask;
+
+    public ProductCatalog() {
+        this(MIN_CAPACITY);
+    }
+
+    public ProductCatalog(int expectedSize) {
+        int capacity = Math.max(expectedSize, MIN_CAPACITY);
+        barcodes = new long[capacity];
+        names = new String[capacity];
+        prices = new long[capacity];
+        currencies = new short[capacity];
+        products = new AtomicReferenceArray<>(capacity);
+        allocateIndex(tableSizeFor(capacity));
+    }
+
+    // Lägger till en artikel, eller ersätter namn och pris om streckkoden redan finns. Returnerar artikelns slot.
+    // Bara för en katalog som ännu inte delas med kassorna.
+    public int add(long barcode, String name, Money price) {
+        if (barcode <= 0) {
+            throw new IllegalArgumentException("Ogiltig streckkod: " + barcode);
+        }
+        int slot = slotOf(barcode);
+        if (slot < 0) {
+            if (size == barcodes.length) {
+                grow();
+            }
+            slot = size++;
+            barcodes[slot] = barcode;
+            insert(barcode, slot);
+        }
+        names[slot] = name;
+        prices[slot] = price.getMinorUnits();
+        currencies[slot] = (short) CurrencyRegistry.register(price.getCurrency());
+        products.set(slot, null); // Nytt pris ger en ny Product vid nästa uppslag
+        return slot;
+    }
+
+    // Kopia att ändra med add() medan kassorna fortsätter läsa den här katalogen. Artiklar som inte ändras
+    // i kopian behåller sina Product-objekt, så kvitton och grupper som redan har dem hittar dem även i kopian.
+    // En ProductGroup innehåller Product-objekt, så en artikel med nytt pris läggs till i sina grupper igen.
+    public ProductCatalog copy() {
+        ProductCatalog copy = new ProductCatalog(barcodes.length);
+        copy.size = size;
+        System.arraycopy(barcodes, 0, copy.barcodes, 0, size);
+        System.arraycopy(names, 0, copy.names, 0, size);
+        System.arraycopy(prices, 0, copy.prices, 0, size);
+        System.arraycopy(currencies, 0, copy.currencies, 0, size);
+        for (int i = 0; i < size; i++) {
+            copy.products.set(i, products.get(i));
+        }
+        System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+        System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+        return copy;
+    }
+
+    // Produkten med streckkoden, eller null om den inte finns i katalogen
+    public Product lookup(long barcode) {
+        int slot = slotOf(barcode);
+        return slot < 0 ? null : getProduct(slot);
+    }
+
+    // Artikelns slot, eller -1 om streckkoden inte finns
+    public int slotOf(long barcode) {
+        if (barcode <= 0) {
+            return -1;
+        }
+        for (int i = hash(barcode) & mask; ; i = (i + 1) & mask) {
+            long key = keys[i];
+            if (key == barcode) {
+                return slots[i];
+            }
+            if (key == 0) {
+                return -1;
+            }
+        }
+    }
+
+    public Product getProduct(int slot) {
+        Product product = products.get(slot);
+        if (product == null) {
+            Product created = new Product(names[slot], getPrice(slot), barcodes[slot]);
+            // Två trådar kan skapa en produkt samtidigt; bara den första sparas och används av båda
+            product = products.compareAndSet(slot, null, created) ? created : products.get(slot);
+        }
+        return product;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public long getPriceMinorUnits(int slot) {
+        return prices[slot];
+    }
+
+    public java.util.Currency getCurrency(int slot) {
+        return CurrencyRegistry.currencyAt(currencies[slot]);
+    }
+
+    public Money getPrice(int slot) {
+        return Money.ofMinorUnits(prices[slot], getCurrency(slot));
+    }
+
+    public long getBarcode(int slot) {
+        return barcodes[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int capacity = barcodes.length * 2;
+        barcodes = Arrays.copyOf(barcodes, capacity);
+        names = Arrays.copyOf(names, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        currencies = Arrays.copyOf(currencies, capacity);
+        AtomicReferenceArray<Product> grown = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < size; i++) {
+            grown.set(i, products.get(i));
+        }
+        products = grown;
+
+        // Hashtabellen växer med arrayerna, så att sonderingskedjorna förblir korta
+        allocateIndex(tableSizeFor(capacity));
+        for (int i = 0; i < size; i++) {
+            insert(barcodes[i], i);
+        }
+    }
+
+    private void allocateIndex(int tableSize) {
+        keys = new long[tableSize];
+        slots = new int[tableSize];
+        mask = tableSize - 1;
+    }
+
+    private void insert(long barcode, int slot) {
+        int i = hash(barcode) & mask;
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = barcode;
+        slots[i] = slot;
+    }
+
+    // Minsta tvåpotens som ger högst 70 % fyllnadsgrad när alla platser i arrayerna används
+    static int tableSizeFor(int capacity) {
+        int needed = (int) Math.ceil(capacity / MAX_LOAD);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    // Streckkoder är ofta löpnummer med gemensamt prefix, så bitarna blandas innan de används som index
+    static int hash(long barcode) {
+        long h = barcode * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
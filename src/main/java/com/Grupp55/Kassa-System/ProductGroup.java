@@ -1,40 +1,116 @@
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ProductGroup {
     private String groupName;
-    private List<Product> products;
+    // Antal exemplar per produkt, i den ordning produkterna först lades till. Samma produkt får finnas flera gånger.
+    private final Map<Product, Entry> entries = new LinkedHashMap<>();
+    private int size;
+    // Gruppens totalpris hålls uppdaterat vid varje ändring, så att en grupprabatt kan räknas ut utan att gå igenom gruppen
+    private final MoneyAccumulator priceSum = new MoneyAccumulator(null);
+    private List<Product> productList;
 
     public ProductGroup(String groupName) {
         this.groupName = groupName;
-        this.products = new ArrayList<>();
     }
 
     public void addProduct(Product product) {
-        products.add(product);
+        if (priceSum.getCurrency() == null && product.getPrice() != null) {
+            // Summan räknas i den första prissatta produktens valuta; produkter utan pris bidrar med 0
+            priceSum.reset(product.getPrice().getCurrency());
+        }
+        Entry entry = entries.get(product);
+        if (entry == null) {
+            entry = new Entry(unitPrice(product));
+            entries.put(product, entry);
+            product.joinGroup(this);
+        }
+        entry.count++;
+        size++;
+        priceSum.addMinorUnits(entry.unitPrice);
+        productList = null;
     }
 
+    // Tar bort ett exemplar av produkten
     public void removeProduct(Product product) {
-        products.remove(product);
+        Entry entry = entries.get(product);
+        if (entry == null) {
+            return;
+        }
+        entry.count--;
+        size--;
+        priceSum.addMinorUnits(-entry.unitPrice);
+        if (entry.count == 0) {
+            entries.remove(product);
+            product.leaveGroup(this);
+        }
+        if (size == 0) {
+            priceSum.reset(null); // Nästa produkt bestämmer valutan på nytt
+        }
+        productList = null;
+    }
+
+    public boolean contains(Product product) {
+        return entries.containsKey(product);
+    }
+
+    // Antal exemplar av produkten i gruppen
+    public int getQuantity(Product product) {
+        Entry entry = entries.get(product);
+        return entry == null ? 0 : entry.count;
+    }
+
+    public int size() {
+        return size;
     }
 
+    // En post per exemplar; listan byggs bara om när gruppen har ändrats
     public List<Product> getProducts() {
-        return products;
+        if (productList == null) {
+            List<Product> products = new ArrayList<>(size);
+            for (Map.Entry<Product, Entry> entry : entries.entrySet()) {
+                for (int i = 0; i < entry.getValue().count; i++) {
+                    products.add(entry.getKey());
+                }
+            }
+            productList = Collections.unmodifiableList(products);
+        }
+        return productList;
     }
 
-    public double calculateGroupDiscount(double discountPercentage) {
-        double totalDiscountedPrice = 0;
+    // Summan av alla exemplars priser, i den första produktens valuta
+    public Money getTotalPrice() {
+        return priceSum.toMoney();
+    }
 
-        for (Product product : products) {
-            double originalPrice = product.getPrice().getAmount();
-            double discountedPrice = originalPrice * (1 - discountPercentage / 100);
-            totalDiscountedPrice += discountedPrice;
+    public double calculateGroupDiscount(double discountPercentage) {
+        if (size == 0) {
+            return 0;
         }
 
-        return totalDiscountedPrice;
+        // Summan är redan exakt i minsta enhet, så procentsatsen appliceras en gång
+        return priceSum.getAmount() * (1 - discountPercentage / 100);
     }
 
     public String getGroupName() { // Fix för att använda 'groupName'
         return groupName;
     }
+
+    // Priset räknas om till gruppens valuta när produkten läggs till, och samma belopp dras av när den tas bort
+    private long unitPrice(Product product) {
+        Money price = product.getPrice();
+        return price == null ? 0 : price.minorUnitsIn(priceSum.getCurrency());
+    }
+
+    private static final class Entry {
+        final long unitPrice;
+        int count;
+
+        Entry(long unitPrice) {
+            this.unitPrice = unitPrice;
+        }
+    }
 }
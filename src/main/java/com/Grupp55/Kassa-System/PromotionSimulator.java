@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+// Räknar ut vad en kampanj hade kostat genom att prissätta historiska kvitton på nytt med en eller flera
+// tänkta rabattuppsättningar. Arkivet delas upp i block som prissätts parallellt med fork-join, och varje
+// deluppgift summerar i egna long-räknare som slås ihop på vägen upp, så trådarna delar inget föränderligt.
+//
+// Raderna prissätts som i Receipt, med rabatternas staplingspolicy och det historiska styckpriset som utgångspunkt.
+// Resultatet jämförs med vad kvittona faktiskt kostade.
+public class PromotionSimulator {
+    // Hittar produkten för en rad i ett arkiverat kvitto, t.ex. via namn eller streckkod. Null om den är okänd.
+    @FunctionalInterface
+    public interface ProductResolver {
+        Product resolve(ArchivedReceipt receipt, int line);
+    }
+
+    private static final int BLOCKS_PER_TASK = 4;
+    private static final int RECEIPTS_PER_TASK = 4096;
+
+    // Positioner i räknararrayen; därefter följer en intäktsräknare per rabattuppsättning
+    private static final int BASKETS = 0;
+    private static final int LIST_PRICE = 1;
+    private static final int HISTORICAL_REVENUE = 2;
+    private static final int UNRESOLVED_LINES = 3;
+    private static final int REVENUE = 4;
+
+    private final ProductResolver resolver;
+    private final java.util.Currency currency;
+    private final ForkJoinPool pool;
+
+    public PromotionSimulator(ProductResolver resolver, java.util.Currency currency) {
+        this(resolver, currency, ForkJoinPool.commonPool());
+    }
+
+    public PromotionSimulator(ProductResolver resolver, java.util.Currency currency, ForkJoinPool pool) {
+        this.resolver = resolver;
+        this.currency = currency;
+        this.pool = pool;
+    }
+
+    // Slår upp produkterna på namnet som står på kvittot
+    public static ProductResolver byName(Map<String, Product> products) {
+        return (receipt, line) -> products.get(receipt.getProductName(line));
+    }
+
+    // Prissätter hela arkivet med varje rabattuppsättning; ett resultat per uppsättning, i samma ordning
+    public List<Result> simulate(ReceiptArchiveReader archive, List<DiscountManager> candidates) {
+        return simulate(archive.getBlockCount(), BLOCKS_PER_TASK, (from, to, action) -> {
+            for (int block = from; block < to; block++) {
+                archive.forEachInBlock(block, action);
+            }
+        }, candidates);
+    }
+
+    public List<Result> simulate(List<ArchivedReceipt> baskets, List<DiscountManager> candidates) {
+        return simulate(baskets.size(), RECEIPTS_PER_TASK, (from, to, action) -> {
+            for (int i = from; i < to; i++) {
+                action.accept(baskets.get(i));
+            }
+        }, candidates);
+    }
+
+    private List<Result> simulate(int size, int threshold, Source source, List<DiscountManager> candidates) {
+        ExchangeRateTable rates = CurrencyRegistry.getExchangeRates(); // Samma kurser för hela körningen
+        long[] totals = pool.invoke(new PricingTask(source, 0, size, threshold, candidates, rates));
+        List<Result> results = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            results.add(new Result(currency, totals[BASKETS], totals[LIST_PRICE], totals[HISTORICAL_REVENUE],
+                    totals[REVENUE + i], totals[UNRESOLVED_LINES]));
+        }
+        return results;
+    }
+
+    // Går igenom kvittona i intervallet [from, to) av källan, t.ex. block i ett arkiv
+    @FunctionalInterface
+    private interface Source {
+        void forEach(int from, int to, Consumer<ArchivedReceipt> action);
+    }
+
+    private final class PricingTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L; // RecursiveTask är Serializable, men uppgiften serialiseras aldrig
+
+        private final Source source;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final List<DiscountManager> candidates;
+        private final ExchangeRateTable rates;
+
+        PricingTask(Source source, int from, int to, int threshold, List<DiscountManager> candidates, ExchangeRateTable rates) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.candidates = candidates;
+            this.rates = rates;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > threshold) {
+                int middle = (from + to) >>> 1;
+                PricingTask left = new PricingTask(source, from, middle, threshold, candidates, rates);
+                left.fork();
+                long[] totals = new PricingTask(source, middle, to, threshold, candidates, rates).compute();
+                long[] leftTotals = left.join();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += leftTotals[i];
+                }
+                return totals;
+            }
+
+            // DiscountManager är inte trådsäker, så varje deluppgift prissätter med egna kopior
+            DiscountManager[] managers = new DiscountManager[candidates.size()];
+            for (int i = 0; i < managers.length; i++) {
+                managers[i] = candidates.get(i).copy();
+            }
+            long[] totals = new long[REVENUE + managers.length];
+            source.forEach(from, to, receipt -> price(receipt, managers, totals));
+            return totals;
+        }
+
+        private void price(ArchivedReceipt receipt, DiscountManager[] managers, long[] totals) {
+            totals[BASKETS]++;
+            for (int line = 0; line < receipt.getLineCount(); line++) {
+                java.util.Currency lineCurrency = receipt.getPriceCurrency(line);
+                int quantity = receipt.getQuantity(line);
+                long unitPrice = receipt.getUnitPrice(line);
+                long historical = toSettlement(receipt.getLinePrice(line), lineCurrency);
+                totals[LIST_PRICE] += toSettlement(unitPrice * quantity, lineCurrency);
+                totals[HISTORICAL_REVENUE] += historical;
+
+                Product product = resolver.resolve(receipt, line);
+                if (product == null || quantity == 0) {
+                    // Okänd produkt: raden räknas med sitt historiska pris i alla uppsättningar
+                    totals[UNRESOLVED_LINES]++;
+                    for (int i = 0; i < managers.length; i++) {
+                        totals[REVENUE + i] += historical;
+                    }
+                    continue;
+                }
+                double unitAmount = (double) unitPrice / Money.scaleOf(lineCurrency);
+                for (int i = 0; i < managers.length; i++) {
+                    double amount = managers[i].applyBestDiscount(product, unitAmount, quantity, rates);
+                    totals[REVENUE + i] += toSettlement(Money.toMinorUnits(amount, lineCurrency), lineCurrency);
+                }
+            }
+        }
+
+        private long toSettlement(long minorUnits, java.util.Currency from) {
+            return from.equals(currency) ? minorUnits : Money.convertMinorUnits(minorUnits, from, currency, rates);
+        }
+    }
+
+    // Utfallet för en rabattuppsättning. Alla belopp är i simulatorns valuta.
+    public static final class Result {
+        private final java.util.Currency currency;
+        private final long baskets;
+        private final long listPrice;
+        private final long historicalRevenue;
+        private final long revenue;
+        private final long unresolvedLines;
+
+        Result(java.util.Currency currency, long baskets, long listPrice, long historicalRevenue, long revenue, long unresolvedLines) {
+            this.currency = currency;
+            this.baskets = baskets;
+            this.listPrice = listPrice;
+            this.historicalRevenue = historicalRevenue;
+            this.revenue = revenue;
+            this.unresolvedLines = unresolvedLines;
+        }
+
+        public long getBaskets() {
+            return baskets;
+        }
+
+        // Vad kvittona hade kostat utan några rabatter alls
+        public Money getListPrice() {
+            return Money.ofMinorUnits(listPrice, currency);
+        }
+
+        // Vad kvittona faktiskt kostade
+        public Money getHistoricalRevenue() {
+            return Money.ofMinorUnits(historicalRevenue, currency);
+        }
+
+        // Vad kvittona hade kostat med den här rabattuppsättningen
+        public Money getRevenue() {
+            return Money.ofMinorUnits(revenue, currency);
+        }
+
+        public Money getDiscountSpend() {
+            return Money.ofMinorUnits(listPrice - revenue, currency);
+        }
+
+        // Skillnad i intäkt mot utfallet, negativ om kampanjen hade kostat pengar
+        public Money getRevenueDelta() {
+            return Money.ofMinorUnits(revenue - historicalRevenue, currency);
+        }
+
+        // Skillnad i rabattkostnad mot de rabatter som faktiskt gavs
+        public Money getDiscountSpendDelta() {
+            return Money.ofMinorUnits(historicalRevenue - revenue, currency);
+        }
+
+        // Rader vars produkt inte kunde slås upp och därför räknades med sitt historiska pris
+        public long getUnresolvedLines() {
+            return unresolvedLines;
+        }
+    }
+}
@@ -2,77 +2,282 @@ import java.awt.*;
 import java.awt.print.*;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Receipt implements Printable {
-    private List<Product> products;
-    private List<Discount> discounts;
+    // En rad per produkt med antal, i den ordning produkterna först skannades
+    private Map<Product, ReceiptLine> lines;
+    private int itemCount;
+    private DiscountManager discounts;
     private Date date;
 
+    // Växelkurserna som gällde när köpet startade. Kvittot räknar med samma kurser även om de uppdateras under dagen.
+    private ExchangeRateTable exchangeRates;
+
+    // Löpande total per valuta som hålls uppdaterad vid varje ändring, så att den kan läsas av utan att räkna om korgen.
+    // Summorna är indexerade på valutans löpnummer i CurrencyRegistry; varje valuta växlas en gång när totalen läses.
+    // Radpriset sätts när varan skannas; recalculate() räknar om allt, t.ex. om en rabatt har gått ut.
+    private final java.util.Currency currency;
+    private long[] currencyTotals;
+    private long settledTotal; // Totalen i kvittots valuta, giltig så länge settled är true
+    private boolean settled = true;
+    private java.util.Currency[] displayCurrencies = new java.util.Currency[0];
+
+    private final ReceiptRenderer renderer = new ReceiptRenderer();
+    private String renderedContent;
+    private String[] renderedLines;
+
     public Receipt() {
-        this.products = new ArrayList<>();
-        this.discounts = new ArrayList<>();
+        this(java.util.Currency.getInstance("SEK"));
+    }
+
+    public Receipt(java.util.Currency currency) {
+        this.lines = new LinkedHashMap<>();
+        this.discounts = new DiscountManager();
         this.date = new Date();
+        this.currency = currency;
+        this.currencyTotals = new long[CurrencyRegistry.register(currency) + 1];
+        this.exchangeRates = CurrencyRegistry.getExchangeRates();
     }
 
+    // Oberoende kopia av kvittot, t.ex. för att arkivera det medan kassan fortsätter med nästa kund
+    public Receipt snapshot() {
+        Receipt copy = new Receipt(currency);
+        for (ReceiptLine line : lines.values()) {
+            copy.lines.put(line.getProduct(), line.copy());
+        }
+        copy.discounts = discounts.copy();
+        copy.itemCount = itemCount;
+        copy.date = (Date) date.clone();
+        copy.exchangeRates = exchangeRates;
+        copy.currencyTotals = currencyTotals.clone();
+        copy.settled = false;
+        copy.displayCurrencies = displayCurrencies;
+        copy.renderedContent = renderedContent; // Texten är oföränderlig och kan delas
+        return copy;
+    }
+
+    // En post per enhet, t.ex. tre kaffe ger tre poster. Använd getLines() för att slippa bygga listan.
     public List<Product> getProducts() {
+        List<Product> products = new ArrayList<>(itemCount);
+        for (ReceiptLine line : lines.values()) {
+            for (int i = 0; i < line.getQuantity(); i++) {
+                products.add(line.getProduct());
+            }
+        }
         return products;
     }
 
+    public Collection<ReceiptLine> getLines() {
+        return Collections.unmodifiableCollection(lines.values());
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getQuantity(Product product) {
+        ReceiptLine line = lines.get(product);
+        return line == null ? 0 : line.getQuantity();
+    }
+
+    public List<Discount> getDiscounts() {
+        return discounts.getDiscounts();
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public ExchangeRateTable getExchangeRates() {
+        return exchangeRates;
+    }
+
+    public java.util.Currency getCurrency() {
+        return currency;
+    }
+
+    // Totalen i kvittots valuta i minsta enhet
+    public long getTotalMinorUnits() {
+        if (!settled) {
+            settledTotal = settle(currency);
+            settled = true;
+        }
+        return settledTotal;
+    }
+
+    // Valutor som totalen också ska visas i på kvittot, t.ex. euro i en gränsbutik
+    public void setDisplayCurrencies(java.util.Currency... currencies) {
+        invalidateRendering();
+        this.displayCurrencies = currencies.clone();
+    }
+
+    public java.util.Currency[] getDisplayCurrencies() {
+        return displayCurrencies.clone();
+    }
+
     public void addProduct(Product product) {
-        products.add(product);
+        addProduct(product, 1);
     }
 
+    public void addProduct(Product product, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Antal måste vara positivt: " + quantity);
+        }
+        invalidateRendering();
+        ReceiptLine line = lines.get(product);
+        if (line == null) {
+            line = new ReceiptLine(product, currency);
+            lines.put(product, line);
+        }
+        line.setQuantity(line.getQuantity() + quantity);
+        itemCount += quantity;
+        priceLine(line);
+    }
+
+    // Tar bort en enhet av produkten
     public void removeProduct(Product product) {
-        products.remove(product);
+        ReceiptLine line = lines.get(product);
+        if (line == null) {
+            return;
+        }
+        invalidateRendering();
+        itemCount--;
+        if (line.getQuantity() == 1) {
+            lines.remove(product);
+            addToTotal(line, -line.getMinorUnits());
+        } else {
+            line.setQuantity(line.getQuantity() - 1);
+            priceLine(line);
+        }
     }
 
     public void addDiscount(Discount discount) {
-        discounts.add(discount);
+        if (!discounts.addDiscount(discount)) {
+            return; // Samma rabatt en gång till ändrar inget
+        }
+        invalidateRendering();
+
+        // Bara rader som rabatten gäller kan få ett nytt bästa pris
+        for (ReceiptLine line : lines.values()) {
+            Product product = line.getProduct();
+            if (product.getPrice() != null && discount.isApplicable(product)) {
+                priceLine(line);
+            }
+        }
+    }
+
+    // Räkna om alla rader från grunden
+    public void recalculate() {
+        invalidateRendering();
+        for (ReceiptLine line : lines.values()) {
+            priceLine(line);
+        }
+    }
+
+    // Avsluta köpet och återställ kvittot för nästa kund
+    public void endPurchase() {
+        invalidateRendering();
+        lines.clear();
+        itemCount = 0;
+        discounts = new DiscountManager();
+        java.util.Arrays.fill(currencyTotals, 0);
+        settledTotal = 0;
+        settled = true;
+        date = new Date();
+        exchangeRates = CurrencyRegistry.getExchangeRates();
     }
 
     public double calculateTotal() {
-        double total = 0;
-        for (Product product : products) {
-            double productPrice = product.getPrice().getAmount();
-            for (Discount discount : discounts) {
-                if (discount.isApplicable(product)) {
-                    productPrice = discount.applyDiscount(productPrice);
-                }
+        return (double) getTotalMinorUnits() / Money.scaleOf(currency);
+    }
+
+    // Totalen i valfri valuta, med de växelkurser som gällde när köpet startade
+    public Money calculateTotal(java.util.Currency settlementCurrency) {
+        if (settlementCurrency.equals(currency)) {
+            return Money.ofMinorUnits(getTotalMinorUnits(), currency);
+        }
+        return Money.ofMinorUnits(settle(settlementCurrency), settlementCurrency);
+    }
+
+    // Samma total i flera valutor, t.ex. för en kunddisplay som visar både kronor och euro
+    public List<Money> calculateTotals(java.util.Currency... currencies) {
+        List<Money> totals = new ArrayList<>(currencies.length);
+        for (java.util.Currency target : currencies) {
+            totals.add(calculateTotal(target));
+        }
+        return totals;
+    }
+
+    // Varje valutas summa växlas en gång, i stället för att varje rad växlas för sig
+    private long settle(java.util.Currency target) {
+        long sum = 0;
+        int to = CurrencyRegistry.indexOf(target); // Hinkarna är redan löpnummer, så bara målvalutan slås upp
+        for (int bucket = 0; bucket < currencyTotals.length; bucket++) {
+            long amount = currencyTotals[bucket];
+            if (amount != 0) {
+                sum += bucket == to ? amount : Money.convertMinorUnits(amount, bucket, to, exchangeRates);
             }
-            total += productPrice;
         }
-        return total;
+        return sum;
+    }
+
+    private void addToTotal(ReceiptLine line, long delta) {
+        int bucket = line.getBucket();
+        if (bucket >= currencyTotals.length) {
+            currencyTotals = java.util.Arrays.copyOf(currencyTotals, bucket + 1);
+        }
+        currencyTotals[bucket] += delta;
+        settled = false;
     }
 
+    private void priceLine(ReceiptLine line) {
+        Product product = line.getProduct();
+        double amount = 0; // Produkter utan pris räknas inte med i totalen
+        if (product.getPrice() != null) {
+            // Fasta rabattbelopp i en annan valuta växlas med samma kurser som totalen
+            amount = discounts.applyBestDiscount(product, product.getPrice().getAmount(), line.getQuantity(), exchangeRates);
+        }
+        addToTotal(line, line.setAmount(amount));
+    }
+
+    // Kvittotexten renderas en gång och återanvänds för skärm, fil och skrivare tills kvittot ändras
     public String generateReceiptContent() {
-        StringBuilder receipt = new StringBuilder();
-        receipt.append("-------- KVITTO --------\n");
-        receipt.append("Datum: ").append(date).append("\n\n");
-        receipt.append(String.format("%-20s %-10s %-10s\n", "Produkt", "Pris", "Rabatt"));
-        receipt.append("-------------------------------\n");
-
-        for (Product product : products) {
-            double originalPrice = product.getPrice().getAmount();
-            double discountedPrice = originalPrice;
-
-            for (Discount discount : discounts) {
-                if (discount.isApplicable(product)) {
-                    discountedPrice = discount.applyDiscount(originalPrice);
-                }
-            }
+        if (renderedContent == null) {
+            renderedContent = renderer.render(this);
+        }
+        return renderedContent;
+    }
 
-            String discountStr = discountedPrice < originalPrice ? String.format("-%.2f", originalPrice - discountedPrice) : "-";
-            receipt.append(String.format("%-20s %-10.2f %-10s\n", product.getName(), discountedPrice, discountStr));
+    public void writeTo(Appendable out) throws IOException {
+        if (renderedContent != null) {
+            out.append(renderedContent);
+        } else {
+            renderer.render(this, out);
         }
+    }
 
-        receipt.append("\n-------------------------------\n");
-        receipt.append(String.format("Totalt: %.2f\n", calculateTotal()));
-        receipt.append("-------------------------------\n");
+    public void writeTo(ByteBuffer buffer) {
+        renderer.render(this, buffer);
+    }
+
+    private String[] getPrintLines() {
+        if (renderedLines == null) {
+            renderedLines = generateReceiptContent().split("\n");
+        }
+        return renderedLines;
+    }
 
-        return receipt.toString();
+    private void invalidateRendering() {
+        renderedContent = null;
+        renderedLines = null;
     }
 
     public void saveReceiptToFile(String filename) {
@@ -120,7 +325,7 @@ public class Receipt implements Printable {
         Graphics2D g2d = (Graphics2D) g;
         g2d.translate(pf.getImageableX(), pf.getImageableY());
 
-        String[] lines = generateReceiptContent().split("\n");
+        String[] lines = getPrintLines();
         int y = 20;
         for (String line : lines) {
             g2d.drawString(line, 10, y);
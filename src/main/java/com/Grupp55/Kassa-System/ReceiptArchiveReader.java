@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+// Läser ett arkiv skrivet av ReceiptArchiveWriter. Data- och indexfil minnesmappas; en sökning på
+// kvittonummer gör en binärsökning i indexet och avkodar sedan bara ett block. En sökning på datum
+// avkodar de block vars tidsintervall i indexet överlappar sökningen, eftersom kvitton inte behöver
+// ligga i tidsordning.
+// Läsaren ser arkivet som det såg ut när den öppnades och kan användas från flera trådar.
+public class ReceiptArchiveReader implements AutoCloseable {
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    private final int blockCount;
+    private final long validLength;
+    private final long lastNumber;
+    // Sista blockets tidsintervall räknas fram ur datan, eftersom indexet kan vara äldre än den
+    private final long lastMinTimestamp;
+    private final long lastMaxTimestamp;
+
+    public ReceiptArchiveReader(Path dataFile) throws IOException {
+        this.dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+        try (FileChannel indexChannel = FileChannel.open(ReceiptArchiveWriter.indexFileFor(dataFile), StandardOpenOption.READ)) {
+            long dataSize = dataChannel.size();
+            if (dataSize > Integer.MAX_VALUE) {
+                throw new IOException("Arkivet är för stort för att mappas, dela upp det per månad: " + dataFile);
+            }
+            this.data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize);
+            if (dataSize < ReceiptArchiveWriter.HEADER_BYTES || data.getInt(0) != ReceiptArchiveWriter.MAGIC) {
+                throw new IOException("Inte ett kvittoarkiv: " + dataFile);
+            }
+            long indexEntries = indexChannel.size() / ReceiptArchiveWriter.INDEX_ENTRY_BYTES;
+            this.index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexEntries * ReceiptArchiveWriter.INDEX_ENTRY_BYTES);
+
+            // Indexposter som pekar utanför datan kommer från en avbruten skrivning och ignoreras
+            int blocks = (int) indexEntries;
+            while (blocks > 0 && blockOffset(blocks - 1) >= dataSize) {
+                blocks--;
+            }
+
+            // Sista blocket avkodas för att hitta sista hela kvittot och blockets tidsintervall
+            long[] last = {ReceiptArchiveWriter.HEADER_BYTES, blocks > 0 ? firstNumber(blocks - 1) - 1 : 0, 0, 0};
+            while (blocks > 0) {
+                int block = blocks - 1;
+                last[0] = blockOffset(block);
+                last[2] = Long.MAX_VALUE;
+                last[3] = Long.MIN_VALUE;
+                scanBlock(block, (int) dataSize, receipt -> {
+                    last[1] = receipt.getNumber();
+                    last[2] = Math.min(last[2], receipt.getTimestamp());
+                    last[3] = Math.max(last[3], receipt.getTimestamp());
+                    return true;
+                }, end -> last[0] = end);
+                if (last[0] > blockOffset(block)) {
+                    break;
+                }
+                blocks--; // Tomt block, t.ex. om det första kvittot aldrig skrevs klart
+                last[1] = blocks > 0 ? firstNumber(blocks - 1) - 1 : 0;
+            }
+            this.blockCount = blocks;
+            this.validLength = blocks > 0 ? last[0] : ReceiptArchiveWriter.HEADER_BYTES;
+            this.lastNumber = last[1];
+            this.lastMinTimestamp = last[2];
+            this.lastMaxTimestamp = last[3];
+        } catch (IOException | RuntimeException e) {
+            dataChannel.close();
+            throw e;
+        }
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    // Antal byte i datafilen som innehåller hela kvitton
+    public long getValidLength() {
+        return validLength;
+    }
+
+    public long getLastNumber() {
+        return lastNumber;
+    }
+
+    public static boolean exists(Path dataFile) {
+        return Files.exists(dataFile) && Files.exists(ReceiptArchiveWriter.indexFileFor(dataFile));
+    }
+
+    public ArchivedReceipt findByNumber(long number) {
+        int block = lastBlockWhere(number);
+        if (block < 0 || number > lastNumber) {
+            return null;
+        }
+        ArchivedReceipt[] found = new ArchivedReceipt[1];
+        scanBlock(block, blockEnd(block), receipt -> {
+            if (receipt.getNumber() == number) {
+                found[0] = receipt;
+            }
+            return receipt.getNumber() < number;
+        }, end -> { });
+        return found[0];
+    }
+
+    // Alla kvitton med from <= datum < to, i kvittonummerordning. Datumet är när köpet startade, så ett
+    // block kan innehålla tider i vilken ordning som helst; varje block som överlappar läses hela.
+    public List<ArchivedReceipt> findByDateRange(Date from, Date to) {
+        long fromMillis = from.getTime();
+        long toMillis = to.getTime();
+        List<ArchivedReceipt> receipts = new ArrayList<>();
+        for (int block = 0; block < blockCount; block++) {
+            if (maxTimestamp(block) < fromMillis || minTimestamp(block) >= toMillis) {
+                continue;
+            }
+            scanBlock(block, blockEnd(block), receipt -> {
+                if (receipt.getTimestamp() >= fromMillis && receipt.getTimestamp() < toMillis) {
+                    receipts.add(receipt);
+                }
+                return true;
+            }, end -> { });
+        }
+        return receipts;
+    }
+
+    // Går igenom hela arkivet i ordning
+    public void forEach(Consumer<ArchivedReceipt> action) {
+        for (int block = 0; block < blockCount; block++) {
+            scanBlock(block, blockEnd(block), receipt -> {
+                action.accept(receipt);
+                return true;
+            }, end -> { });
+        }
+    }
+
+    // Går igenom ett enskilt block; olika block kan läsas parallellt från olika trådar
+    public void forEachInBlock(int block, Consumer<ArchivedReceipt> action) {
+        scanBlock(block, blockEnd(block), receipt -> {
+            action.accept(receipt);
+            return true;
+        }, end -> { });
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataChannel.close();
+    }
+
+    // Minsta och största tidsstämpel i blocket
+    long minTimestamp(int block) {
+        return block == blockCount - 1 ? lastMinTimestamp : index.getLong(block * ReceiptArchiveWriter.INDEX_ENTRY_BYTES + ReceiptArchiveWriter.RANGE_OFFSET);
+    }
+
+    long maxTimestamp(int block) {
+        return block == blockCount - 1 ? lastMaxTimestamp : index.getLong(block * ReceiptArchiveWriter.INDEX_ENTRY_BYTES + ReceiptArchiveWriter.RANGE_OFFSET + Long.BYTES);
+    }
+
+    // Binärsökning efter sista blocket vars första kvittonummer är <= number
+    private int lastBlockWhere(long number) {
+        int low = 0;
+        int high = blockCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstNumber(middle) <= number) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private long firstNumber(int block) {
+        return index.getLong(block * ReceiptArchiveWriter.INDEX_ENTRY_BYTES);
+    }
+
+    private long firstTimestamp(int block) {
+        return index.getLong(block * ReceiptArchiveWriter.INDEX_ENTRY_BYTES + Long.BYTES);
+    }
+
+    private long blockOffset(int block) {
+        return index.getLong(block * ReceiptArchiveWriter.INDEX_ENTRY_BYTES + 2 * Long.BYTES);
+    }
+
+    private int blockEnd(int block) {
+        return (int) (block + 1 < blockCount ? blockOffset(block + 1) : validLength);
+    }
+
+    // Avkodar blockets kvitton tills visitor returnerar false, blocket tar slut eller en post inte stämmer
+    // med sin kontrollsumma. endOfLastRecord får positionen efter det sista hela kvittot som avkodades.
+    private void scanBlock(int block, int end, Predicate<ArchivedReceipt> visitor, java.util.function.LongConsumer endOfLastRecord) {
+        ByteBuffer records = data.duplicate();
+        records.position((int) blockOffset(block));
+        records.limit(end);
+        List<String> dictionary = new ArrayList<>();
+        long number = firstNumber(block) - 1;
+        long timestamp = firstTimestamp(block);
+        CRC32 crc = new CRC32();
+
+        while (records.hasRemaining()) {
+            ArchivedReceipt receipt;
+            try {
+                // En post är aldrig tom, så längden 0 betyder en nollfylld svans
+                long length = VarInt.getUnsigned(records);
+                if (length <= 0 || length > records.remaining() - Integer.BYTES) {
+                    return;
+                }
+                int checksum = records.getInt();
+                ByteBuffer in = records.slice().limit((int) length);
+                crc.reset();
+                crc.update(in.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    return;
+                }
+                records.position(records.position() + (int) length);
+
+                number += VarInt.getUnsigned(in);
+                timestamp += VarInt.getSigned(in);
+                String currency = getString(in, dictionary);
+                long total = VarInt.getSigned(in);
+                int lineCount = (int) VarInt.getUnsigned(in);
+                String[] names = new String[lineCount];
+                String[] priceCurrencies = new String[lineCount];
+                int[] quantities = new int[lineCount];
+                long[] unitPrices = new long[lineCount];
+                long[] linePrices = new long[lineCount];
+                for (int line = 0; line < lineCount; line++) {
+                    names[line] = getString(in, dictionary);
+                    priceCurrencies[line] = getString(in, dictionary);
+                    quantities[line] = (int) VarInt.getUnsigned(in);
+                    unitPrices[line] = VarInt.getSigned(in);
+                    linePrices[line] = VarInt.getSigned(in);
+                }
+                receipt = new ArchivedReceipt(number, timestamp, currency, total, names, priceCurrencies, quantities, unitPrices, linePrices);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalStateException | NegativeArraySizeException e) {
+                return; // Halvskrivet kvitto i slutet av arkivet
+            }
+            endOfLastRecord.accept(records.position());
+            if (!visitor.test(receipt)) {
+                return;
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in, List<String> dictionary) {
+        int reference = (int) VarInt.getUnsigned(in);
+        if (reference > 0) {
+            return dictionary.get(reference - 1);
+        }
+        long length = VarInt.getUnsigned(in);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[(int) length];
+        in.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        dictionary.add(value);
+        return value;
+    }
+}
@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Skriver kvitton i ett kompakt binärt arkiv för omtryck, returer och revision.
+//
+// Datafilen består av block om blockSize kvitton. Inom ett block kodas tal som varint, tidsstämplar och
+// kvittonummer som skillnad mot föregående kvitto, och produktnamn/valutakoder via en ordlista som byggs
+// upp i blocket (första förekomsten skrivs ut, därefter bara dess nummer). Varje block börjar om från noll
+// och får en post i indexfilen (första kvittonummer, första tidsstämpel, position, minsta och största
+// tidsstämpel), så att en läsare kan hoppa direkt till rätt block utan att läsa filen från början.
+// Se ReceiptArchiveReader.
+//
+// Varje kvitto skrivs som [varint längd][int crc32][kvittot], som i journalen. En läsare slutar vid första
+// post vars längd eller kontrollsumma inte stämmer, så en nollfylld eller halvskriven svans läses aldrig
+// som kvitton.
+//
+// Kvittots tidsstämpel är när köpet startade, så kvitton kan arkiveras i en annan ordning än sina tider.
+// Därför får varje block sitt tidsintervall i indexet; intervallet för blocket som skrivs uppdateras när
+// blocket avslutas och vid varje flush.
+//
+// append buffrar i minnet och kvittot ligger inte i filen förrän efter flush, sync eller close. Som
+// ReceiptSink ska därför appendAndSync användas, som inte returnerar förrän kvittot ligger på disken.
+// Misslyckas den skrivningen tar arkivet inte emot fler kvitton, så att ett nytt försök aldrig kan lägga
+// till samma kvitto två gånger.
+public class ReceiptArchiveWriter implements AutoCloseable {
+    static final int MAGIC = 0x524B4132; // "RKA2"
+    static final int HEADER_BYTES = Integer.BYTES;
+    static final int INDEX_ENTRY_BYTES = 5 * Long.BYTES;
+    static final int RANGE_OFFSET = 3 * Long.BYTES;
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final int blockSize;
+    private ByteBuffer dataBuffer = ByteBuffer.allocate(64 * 1024);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 64);
+    private ByteBuffer record = ByteBuffer.allocate(4 * 1024);
+    private final ByteBuffer range = ByteBuffer.allocate(2 * Long.BYTES);
+    private final CRC32 crc = new CRC32();
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private long nextNumber;
+    private long previousNumber;
+    private long previousTimestamp;
+    private int receiptsInBlock;
+    private long dataPosition;
+    private long blockEntry = -1; // Indexpost för blocket som skrivs
+    private long flushedEntries;
+    private long blockMinTimestamp;
+    private long blockMaxTimestamp;
+    private boolean closed;
+    private boolean failed;
+
+    public ReceiptArchiveWriter(Path dataFile) throws IOException {
+        this(dataFile, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ReceiptArchiveWriter(Path dataFile, int blockSize) throws IOException {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Blockstorleken måste vara positiv: " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.nextNumber = 1;
+
+        // Fortsätt ett befintligt arkiv: kapa eventuell halvskriven post i slutet och börja på ett nytt block
+        long validLength = HEADER_BYTES;
+        long validIndexLength = 0;
+        if (Files.exists(dataFile) && Files.size(dataFile) > 0) {
+            try (ReceiptArchiveReader reader = new ReceiptArchiveReader(dataFile)) {
+                validLength = reader.getValidLength();
+                validIndexLength = (long) reader.getBlockCount() * INDEX_ENTRY_BYTES;
+                nextNumber = reader.getLastNumber() + 1;
+                if (reader.getBlockCount() > 0) {
+                    // Sista blockets intervall i indexet kan vara äldre än datan; läsaren har räknat fram det rätta
+                    blockEntry = reader.getBlockCount() - 1;
+                    blockMinTimestamp = reader.minTimestamp((int) blockEntry);
+                    blockMaxTimestamp = reader.maxTimestamp((int) blockEntry);
+                }
+            }
+        }
+
+        this.data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexFileFor(dataFile), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (data.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).flip();
+            data.write(header, 0);
+        }
+        data.truncate(validLength);
+        index.truncate(validIndexLength);
+        this.dataPosition = validLength;
+        this.flushedEntries = validIndexLength / INDEX_ENTRY_BYTES;
+        if (blockEntry >= 0) {
+            writeRange();
+        }
+    }
+
+    public static Path indexFileFor(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".idx");
+    }
+
+    // Lägger till kvittot i bufferten och returnerar dess kvittonummer. Kvittot skrivs till filen vid nästa
+    // flush, sync eller close.
+    public synchronized long append(Receipt receipt) throws IOException {
+        ensureOpen();
+        long number = nextNumber++;
+        long timestamp = receipt.getDate().getTime();
+
+        if (receiptsInBlock == blockSize || receiptsInBlock == 0) {
+            startBlock(number, timestamp);
+        }
+        int maxSize = maxEncodedSize(receipt);
+        if (record.capacity() < maxSize) {
+            record = ByteBuffer.allocate(Integer.highestOneBit(maxSize) * 2);
+        }
+        ensureCapacity(5 + Integer.BYTES + maxSize);
+
+        record.clear();
+        VarInt.putUnsigned(record, number - previousNumber);
+        VarInt.putSigned(record, timestamp - previousTimestamp);
+        putString(receipt.getCurrency().getCurrencyCode());
+        VarInt.putSigned(record, receipt.getTotalMinorUnits());
+        VarInt.putUnsigned(record, receipt.getLines().size());
+        for (ReceiptLine line : receipt.getLines()) {
+            Money price = line.getProduct().getPrice();
+            putString(line.getProduct().getName());
+            putString(price == null ? receipt.getCurrency().getCurrencyCode() : price.getCurrency().getCurrencyCode());
+            VarInt.putUnsigned(record, line.getQuantity());
+            VarInt.putSigned(record, price == null ? 0 : price.getMinorUnits());
+            VarInt.putSigned(record, line.getMinorUnits());
+        }
+        record.flip();
+        crc.reset();
+        crc.update(record.duplicate());
+
+        int start = dataBuffer.position();
+        VarInt.putUnsigned(dataBuffer, record.remaining());
+        dataBuffer.putInt((int) crc.getValue());
+        dataBuffer.put(record);
+
+        dataPosition += dataBuffer.position() - start;
+        previousNumber = number;
+        previousTimestamp = timestamp;
+        blockMinTimestamp = Math.min(blockMinTimestamp, timestamp);
+        blockMaxTimestamp = Math.max(blockMaxTimestamp, timestamp);
+        receiptsInBlock++;
+        return number;
+    }
+
+    // Lägger till kvittot och väntar tills det ligger på disken; avsedd som ReceiptSink (archive::appendAndSync)
+    public synchronized long appendAndSync(Receipt receipt) throws IOException {
+        long number = append(receipt);
+        sync();
+        return number;
+    }
+
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        try {
+            // Data skrivs före index så att indexet aldrig pekar på data som saknas
+            writeFully(data, dataBuffer);
+            writeFully(index, indexBuffer);
+            flushedEntries = index.size() / INDEX_ENTRY_BYTES;
+            if (blockEntry >= 0) {
+                writeRange();
+            }
+        } catch (IOException e) {
+            // Bufferten kan vara delvis skriven; läsaren kapar en halv post med hjälp av kontrollsumman
+            failed = true;
+            throw e;
+        }
+    }
+
+    // Skriver bufferten och tvingar ut den till disken
+    public synchronized void sync() throws IOException {
+        flush();
+        try {
+            data.force(false);
+            index.force(false);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!failed) {
+                sync();
+            }
+        } finally {
+            closed = true;
+            data.close();
+            index.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Arkivet är stängt");
+        }
+        if (failed) {
+            throw new IOException("Arkivet kunde inte skrivas och tar inte emot fler kvitton");
+        }
+    }
+
+    private void startBlock(long firstNumber, long firstTimestamp) throws IOException {
+        if (blockEntry >= 0) {
+            writeRange();
+        }
+        dictionary.clear();
+        receiptsInBlock = 0;
+        previousNumber = firstNumber - 1;
+        previousTimestamp = firstTimestamp;
+        if (indexBuffer.remaining() < INDEX_ENTRY_BYTES) {
+            flush();
+        }
+        blockEntry = flushedEntries + indexBuffer.position() / INDEX_ENTRY_BYTES;
+        blockMinTimestamp = firstTimestamp;
+        blockMaxTimestamp = firstTimestamp;
+        indexBuffer.putLong(firstNumber).putLong(firstTimestamp).putLong(dataPosition)
+                .putLong(firstTimestamp).putLong(firstTimestamp);
+    }
+
+    // Skriver blockets tidsintervall i dess indexpost, i bufferten eller i filen om posten redan skrivits
+    private void writeRange() throws IOException {
+        if (blockEntry >= flushedEntries) {
+            int offset = (int) (blockEntry - flushedEntries) * INDEX_ENTRY_BYTES + RANGE_OFFSET;
+            indexBuffer.putLong(offset, blockMinTimestamp).putLong(offset + Long.BYTES, blockMaxTimestamp);
+            return;
+        }
+        range.clear();
+        range.putLong(blockMinTimestamp).putLong(blockMaxTimestamp).flip();
+        long position = blockEntry * INDEX_ENTRY_BYTES + RANGE_OFFSET;
+        while (range.hasRemaining()) {
+            position += index.write(range, position);
+        }
+    }
+
+    // Ordlistereferens: 0 följt av strängen första gången, annars strängens nummer + 1
+    private void putString(String value) {
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            VarInt.putUnsigned(record, id + 1);
+            return;
+        }
+        dictionary.put(value, dictionary.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarInt.putUnsigned(record, 0);
+        VarInt.putUnsigned(record, bytes.length);
+        record.put(bytes);
+    }
+
+    // Övre gräns för kvittots kodade storlek, så att det aldrig behöver delas mellan buffertar
+    private static int maxEncodedSize(Receipt receipt) {
+        int size = 4 * 10 + 16;
+        for (ReceiptLine line : receipt.getLines()) {
+            size += 3 * 10 + 2 * 16 + 3 * line.getProduct().getName().length();
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (dataBuffer.remaining() < bytes) {
+            try {
+                writeFully(data, dataBuffer);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            if (dataBuffer.capacity() < bytes) {
+                dataBuffer = ByteBuffer.allocate(Integer.highestOneBit(bytes) * 2);
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,337 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Kvittojournal: alla kvitton för en kassa (lane) skrivs efter varandra i en segmentfil per dag,
+// i stället för att öppna och stänga en fil per kvitto. Kvitton samlas i en buffert och skrivs
+// och synkas till disk (fsync) i grupp när batchSize kvitton väntar eller fsyncIntervalMillis har gått.
+// En gemensam bakgrundstråd synkar också journaler där inget nytt kvitto har kommit, så att de sista kvittona
+// före ett lugnt ögonblick inte blir liggande i bufferten. Ett segment byts när dagen byts eller när det når maxSegmentBytes.
+//
+// Varje post är en int med längden, en int med CRC32 av texten och sedan kvittotexten i UTF-8. En post som
+// inte stämmer med sin kontrollsumma är en avbruten skrivning; läsningen slutar där och skärs bort när
+// segmentet öppnas igen.
+//
+// Misslyckas skrivningen som ett kvitto utlöser skärs segmentet tillbaka till där skrivningen började, kvittot tas
+// bort ur bufferten och append kastar; kvittot finns då inte i journalen och kan lämnas in igen utan att bli dubblerat.
+// Tidigare kvitton ligger kvar i bufferten och skrivs vid nästa försök. Går segmentet inte att skära tillbaka
+// tar journalen inte emot fler kvitton.
+public class ReceiptJournal implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    public static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 1_000;
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private static final String SUFFIX = ".journal";
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kvittojournal-synk");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private final Path directory;
+    private final String laneId;
+    private final int batchSize;
+    private final long fsyncIntervalMillis;
+    private final long maxSegmentBytes;
+    private final Clock clock;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledFuture<?> idleFlush; // Null om varje kvitto ändå synkas direkt
+    private FileChannel channel;
+    private Path segment;
+    private LocalDate segmentDay;
+    private int segmentSequence;
+    private long segmentBytes;
+    private int pendingReceipts;
+    private long lastSyncMillis;
+    private boolean failed; // Ett skrivfel kunde inte återställas; journalen tar inte emot fler kvitton
+
+    public ReceiptJournal(Path directory, String laneId) throws IOException {
+        this(directory, laneId, DEFAULT_BATCH_SIZE, DEFAULT_FSYNC_INTERVAL_MILLIS, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    public ReceiptJournal(Path directory, String laneId, int batchSize, long fsyncIntervalMillis, long maxSegmentBytes) throws IOException {
+        this(directory, laneId, batchSize, fsyncIntervalMillis, maxSegmentBytes, Clock.systemDefaultZone());
+    }
+
+    ReceiptJournal(Path directory, String laneId, int batchSize, long fsyncIntervalMillis, long maxSegmentBytes, Clock clock) throws IOException {
+        if (batchSize < 1 || fsyncIntervalMillis < 0 || maxSegmentBytes < 1) {
+            throw new IllegalArgumentException("Ogiltig journalkonfiguration");
+        }
+        this.directory = directory;
+        this.laneId = laneId;
+        this.batchSize = batchSize;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.clock = clock;
+        this.lastSyncMillis = clock.millis();
+        Files.createDirectories(directory);
+        this.idleFlush = fsyncIntervalMillis == 0 ? null
+                : FLUSHER.scheduleWithFixedDelay(this::flushIfIdle, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void append(Receipt receipt) throws IOException {
+        ensureOpen();
+        LocalDate today = LocalDate.now(clock);
+        if (channel == null || !today.equals(segmentDay)) {
+            openSegment(today);
+        }
+
+        int start = buffer.position();
+        try {
+            buffer.putInt(0).putInt(0); // Längd och kontrollsumma fylls i efteråt
+            receipt.writeTo(buffer);
+        } catch (BufferOverflowException e) {
+            buffer.position(start);
+            appendLarge(receipt);
+            return;
+        }
+        int length = buffer.position() - start - RECORD_HEADER_BYTES;
+        crc.reset();
+        crc.update(buffer.duplicate().limit(buffer.position()).position(start + RECORD_HEADER_BYTES));
+        buffer.putInt(start, length).putInt(start + Integer.BYTES, (int) crc.getValue());
+
+        int bytes = RECORD_HEADER_BYTES + length;
+        segmentBytes += bytes;
+        pendingReceipts++;
+        if (pendingReceipts >= batchSize || clock.millis() - lastSyncMillis >= fsyncIntervalMillis || segmentBytes >= maxSegmentBytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                // Kvittot är inte journalfört; tidigare kvitton i bufferten skrivs vid nästa försök
+                buffer.position(start);
+                segmentBytes -= bytes;
+                pendingReceipts--;
+                throw e;
+            }
+        }
+        rollIfFull();
+    }
+
+    // Skriv och synka alla väntande kvitton direkt
+    public synchronized void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        ensureOpen();
+        writeBuffer(true);
+        pendingReceipts = 0;
+        lastSyncMillis = clock.millis();
+    }
+
+    public synchronized Path getCurrentSegment() {
+        return segment;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        if (idleFlush != null) {
+            idleFlush.cancel(false);
+        }
+        try {
+            if (!failed) {
+                flush();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    // Läser alla kvitton i ett segment, t.ex. för omtryck eller kontroll
+    public static List<String> readSegment(Path segment) throws IOException {
+        List<String> receipts = new ArrayList<>();
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        readRecords(data, receipts);
+        return receipts;
+    }
+
+    // Läser poster fram till slutet eller en avbruten skrivning; returnerar antal giltiga byte.
+    // receipts får vara null om bara längden behövs.
+    private static int readRecords(ByteBuffer data, List<String> receipts) {
+        CRC32 checksum = new CRC32();
+        while (data.remaining() >= RECORD_HEADER_BYTES) {
+            int start = data.position();
+            int length = data.getInt();
+            int expected = data.getInt();
+            if (length < 0 || length > data.remaining()) {
+                data.position(start);
+                break;
+            }
+            checksum.reset();
+            checksum.update(data.array(), data.position(), length);
+            if ((int) checksum.getValue() != expected) {
+                data.position(start);
+                break;
+            }
+            if (receipts != null) {
+                receipts.add(new String(data.array(), data.position(), length, StandardCharsets.UTF_8));
+            }
+            data.position(data.position() + length);
+        }
+        return data.position();
+    }
+
+    // Kvitton som inte ryms i bufferten skrivs och synkas direkt efter att bufferten tömts
+    private void appendLarge(Receipt receipt) throws IOException {
+        byte[] content = receipt.generateReceiptContent().getBytes(StandardCharsets.UTF_8);
+        writeBuffer(false);
+        crc.reset();
+        crc.update(content);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + content.length);
+        record.putInt(content.length).putInt((int) crc.getValue()).put(content).flip();
+        long position = channel.position();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            truncate(position, e);
+            throw e;
+        }
+        segmentBytes += record.capacity();
+        pendingReceipts = 0;
+        lastSyncMillis = clock.millis();
+        rollIfFull();
+    }
+
+    // Byter till ett nytt segment när det aktuella är fullt. Kvittona är redan synkade, så ett fel loggas bara;
+    // nästa append öppnar segmentet igen.
+    private void rollIfFull() {
+        if (segmentBytes < maxSegmentBytes) {
+            return;
+        }
+        segmentSequence++;
+        try {
+            openSegment(segmentDay);
+        } catch (IOException e) {
+            System.err.println("Kunde inte byta segment i kvittojournalen: " + e.getMessage());
+        }
+    }
+
+    // Körs av bakgrundstråden: synkar väntande kvitton när fsyncIntervalMillis har gått utan ett nytt kvitto
+    private synchronized void flushIfIdle() {
+        if (buffer == null || pendingReceipts == 0 || clock.millis() - lastSyncMillis < fsyncIntervalMillis) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            // Kvittona ligger kvar och skrivs vid nästa försök
+            System.err.println("Kunde inte synka kvittojournalen: " + e.getMessage());
+        }
+    }
+
+    // Skriver bufferten sist i segmentet, och synkar om sync är satt. Misslyckas det skärs segmentet tillbaka
+    // till där skrivningen började och bufferten får tillbaka sitt innehåll, som i PointsLedger.
+    private void writeBuffer(boolean sync) throws IOException {
+        long position = channel.position();
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            int end = buffer.limit();
+            buffer.limit(buffer.capacity()).position(end);
+            truncate(position, e);
+            throw e;
+        }
+        buffer.clear();
+    }
+
+    private void truncate(long position, IOException cause) {
+        try {
+            channel.truncate(position);
+        } catch (IOException truncateFailure) {
+            failed = true;
+            cause.addSuppressed(truncateFailure);
+        }
+    }
+
+    private void openSegment(LocalDate day) throws IOException {
+        if (channel != null) {
+            flush();
+            FileChannel previous = channel;
+            channel = null; // Går det nya segmentet inte att öppna försöker nästa append igen
+            previous.close();
+        }
+        if (!day.equals(segmentDay)) {
+            segmentDay = day;
+            segmentSequence = lastSequence(day);
+        }
+        segment = directory.resolve(segmentPrefix(day) + String.format("%03d", segmentSequence) + SUFFIX);
+        // En avbruten post i slutet av ett befintligt segment skärs bort, så att nya kvitton går att läsa efter den
+        long validBytes = Files.exists(segment) ? readRecords(ByteBuffer.wrap(Files.readAllBytes(segment)), null) : 0;
+        FileChannel opened = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            if (opened.size() > validBytes) {
+                opened.truncate(validBytes);
+            }
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        segmentBytes = validBytes;
+    }
+
+    // Fortsätt i dagens senaste segment om journalen öppnas igen, t.ex. efter en omstart
+    private int lastSequence(LocalDate day) throws IOException {
+        String prefix = segmentPrefix(day);
+        int last = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path existing : segments) {
+                String name = existing.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(prefix.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Inte ett av våra segment
+                }
+            }
+        }
+        return last;
+    }
+
+    private String segmentPrefix(LocalDate day) {
+        return "kvitton-" + laneId + "-" + DAY_FORMAT.format(day) + "-";
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Journalen är stängd");
+        }
+        if (failed) {
+            throw new IOException("Journalen kunde inte återställas efter ett skrivfel och tar inte emot fler kvitton");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+// En rad på kvittot: en produkt med antal och rabatterat radpris.
+// Uppdateras av Receipt; price är radens bästa pris enligt rabatternas staplingspolicy, i minsta enhet.
+// Radpriset är alltid i produktens egen valuta, och bucket är valutans löpnummer i CurrencyRegistry.
+public class ReceiptLine {
+    private final Product product;
+    private final java.util.Currency currency;
+    private final int bucket;
+    private int quantity;
+    private long price;
+
+    // Produkter utan pris får kvittots valuta
+    ReceiptLine(Product product, java.util.Currency receiptCurrency) {
+        this.product = product;
+        this.currency = product.getPrice() == null ? receiptCurrency : product.getPrice().getCurrency();
+        this.bucket = CurrencyRegistry.register(currency);
+    }
+
+    ReceiptLine copy() {
+        ReceiptLine copy = new ReceiptLine(product, currency);
+        copy.quantity = quantity;
+        copy.price = price;
+        return copy;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public java.util.Currency getCurrency() {
+        return currency;
+    }
+
+    // Radens rabatterade pris i minsta enhet (öre/cent) av radens valuta
+    public long getMinorUnits() {
+        return price;
+    }
+
+    // Radens pris före rabatt
+    public double getOriginalAmount() {
+        return product.getPrice() == null ? 0 : product.getPrice().getAmount() * quantity;
+    }
+
+    int getBucket() {
+        return bucket;
+    }
+
+    void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    // Sätter nytt radpris och returnerar skillnaden i minsta enhet mot det gamla
+    long setAmount(double amount) {
+        long newPrice = Money.toMinorUnits(amount, currency);
+        long delta = newPrice - price;
+        this.price = newPrice;
+        return delta;
+    }
+}
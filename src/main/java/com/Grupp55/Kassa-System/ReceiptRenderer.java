@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Skriver kvittot rad för rad direkt till en Appendable (StringBuilder, Writer, ...) eller en ByteBuffer.
+// Kolumnlayouten räknas ut en gång i konstruktorn; varje rad skrivs sedan med utfyllnad och egen
+// beloppsformatering i stället för att tolka en formatsträng per rad.
+// En instans återanvänder en intern arbetsbuffert och ska därför inte delas mellan trådar.
+public class ReceiptRenderer {
+    public static final int DEFAULT_NAME_WIDTH = 20;
+    public static final int DEFAULT_PRICE_WIDTH = 10;
+    public static final int DEFAULT_DISCOUNT_WIDTH = 10;
+
+    private static final String TITLE = "-------- KVITTO --------\n";
+    private static final String SEPARATOR = "-------------------------------\n";
+
+    private final int nameWidth;
+    private final int priceWidth;
+    private final int discountWidth;
+    private final String header;
+    private final char[] padding;
+    private final char[] digits = new char[24];
+
+    public ReceiptRenderer() {
+        this(DEFAULT_NAME_WIDTH, DEFAULT_PRICE_WIDTH, DEFAULT_DISCOUNT_WIDTH);
+    }
+
+    public ReceiptRenderer(int nameWidth, int priceWidth, int discountWidth) {
+        this.nameWidth = nameWidth;
+        this.priceWidth = priceWidth;
+        this.discountWidth = discountWidth;
+        this.padding = new char[Math.max(nameWidth, Math.max(priceWidth, discountWidth))];
+        Arrays.fill(padding, ' ');
+
+        StringBuilder headerLine = new StringBuilder();
+        appendPadded(headerLine, "Produkt", nameWidth);
+        headerLine.append(' ');
+        appendPadded(headerLine, "Pris", priceWidth);
+        headerLine.append(' ');
+        appendPadded(headerLine, "Rabatt", discountWidth);
+        this.header = headerLine.append('\n').toString();
+    }
+
+    public String render(Receipt receipt) {
+        StringBuilder out = new StringBuilder(128 + receipt.getLines().size() * (nameWidth + priceWidth + discountWidth + 3));
+        try {
+            render(receipt, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringBuilder kastar aldrig IOException
+        }
+        return out.toString();
+    }
+
+    public void render(Receipt receipt, Appendable out) throws IOException {
+        java.util.Currency currency = receipt.getCurrency();
+        int fractionDigits = Math.max(currency.getDefaultFractionDigits(), 0);
+
+        out.append(TITLE);
+        out.append("Datum: ").append(receipt.getDate().toString()).append("\n\n");
+        out.append(header);
+        out.append(SEPARATOR);
+
+        for (ReceiptLine line : receipt.getLines()) {
+            // Radpriset står i produktens valuta; rader i annan valuta än kvittots får valutakoden efter priset
+            java.util.Currency lineCurrency = line.getCurrency();
+            int lineDigits = lineCurrency == currency ? fractionDigits : Math.max(lineCurrency.getDefaultFractionDigits(), 0);
+            long originalPrice = Money.toMinorUnits(line.getOriginalAmount(), lineCurrency);
+            long discountedPrice = line.getMinorUnits();
+
+            appendName(out, line);
+            out.append(' ');
+            int length = formatAmount(discountedPrice, lineDigits, false);
+            appendDigits(out, length);
+            if (lineCurrency != currency) {
+                String code = lineCurrency.getCurrencyCode();
+                out.append(' ').append(code);
+                length += 1 + code.length();
+            }
+            pad(out, priceWidth - length);
+            out.append(' ');
+            if (discountedPrice < originalPrice) {
+                length = formatAmount(originalPrice - discountedPrice, lineDigits, true);
+                appendDigits(out, length);
+            } else {
+                out.append('-');
+                length = 1;
+            }
+            pad(out, discountWidth - length);
+            out.append('\n');
+        }
+
+        out.append('\n').append(SEPARATOR);
+        out.append("Totalt: ");
+        appendDigits(out, formatAmount(receipt.getTotalMinorUnits(), fractionDigits, false));
+        out.append('\n');
+        for (java.util.Currency displayCurrency : receipt.getDisplayCurrencies()) {
+            Money total = receipt.calculateTotal(displayCurrency);
+            out.append("Totalt (").append(displayCurrency.getCurrencyCode()).append("): ");
+            appendDigits(out, formatAmount(total.getMinorUnits(), Math.max(displayCurrency.getDefaultFractionDigits(), 0), false));
+            out.append('\n');
+        }
+        out.append(SEPARATOR);
+    }
+
+    // Skriver kvittot som UTF-8 direkt i bufferten
+    public void render(Receipt receipt, ByteBuffer buffer) {
+        try {
+            render(receipt, new Utf8Appendable(buffer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Utf8Appendable kastar aldrig IOException
+        }
+    }
+
+    private void appendName(Appendable out, ReceiptLine line) throws IOException {
+        String name = line.getProduct().getName();
+        int length = name.length();
+        out.append(name);
+        if (line.getQuantity() != 1) {
+            out.append(" x");
+            int quantityLength = formatAmount(line.getQuantity(), 0, false);
+            appendDigits(out, quantityLength);
+            length += 2 + quantityLength;
+        }
+        pad(out, nameWidth - length);
+    }
+
+    private void pad(Appendable out, int count) throws IOException {
+        if (count > 0) {
+            appendChars(out, padding, 0, count);
+        }
+    }
+
+    private void appendDigits(Appendable out, int length) throws IOException {
+        appendChars(out, digits, digits.length - length, length);
+    }
+
+    // Skriv ett intervall ur en char-array utan att skapa någon String eller CharBuffer
+    private static void appendChars(Appendable out, char[] chars, int offset, int length) throws IOException {
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars, offset, length);
+        } else if (out instanceof Writer) {
+            ((Writer) out).write(chars, offset, length);
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                out.append(chars[i]);
+            }
+        }
+    }
+
+    // Formaterar minorUnits som t.ex. "123.45" högerjusterat i digits och returnerar längden
+    private int formatAmount(long minorUnits, int fractionDigits, boolean negative) {
+        boolean minus = negative || minorUnits < 0;
+        long value = Math.abs(minorUnits);
+        int position = digits.length;
+        for (int i = 0; i < fractionDigits; i++) {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (fractionDigits > 0) {
+            digits[--position] = '.';
+        }
+        do {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        if (minus) {
+            digits[--position] = '-';
+        }
+        return digits.length - position;
+    }
+
+    private static void appendPadded(StringBuilder out, String text, int width) {
+        out.append(text);
+        for (int i = text.length(); i < width; i++) {
+            out.append(' ');
+        }
+    }
+
+    // Minimal Appendable som kodar tecken som UTF-8 rakt in i en ByteBuffer
+    private static final class Utf8Appendable implements Appendable {
+        private final ByteBuffer buffer;
+
+        Utf8Appendable(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Appendable append(CharSequence text) {
+            return append(text, 0, text.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    appendCodePoint(Character.toCodePoint(c, text.charAt(++i)));
+                } else {
+                    appendCodePoint(c);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            appendCodePoint(c);
+            return this;
+        }
+
+        private void appendCodePoint(int codePoint) {
+            if (codePoint < 0x80) {
+                buffer.put((byte) codePoint);
+            } else if (codePoint < 0x800) {
+                buffer.put((byte) (0xC0 | (codePoint >> 6)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (codePoint < 0x10000) {
+                buffer.put((byte) (0xE0 | (codePoint >> 12)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+import java.io.IOException;
+
+// Mottagare för avslutade kvitton, t.ex. journal::append eller archive::appendAndSync
+@FunctionalInterface
+public interface ReceiptSink {
+    void write(Receipt receipt) throws IOException;
+}
@@ -3,6 +3,7 @@ import java.util.Date;
 public class SimpleDiscount extends Discount {
     private double discountValue; // Kan vara procentsats eller belopp
     private boolean isPercentage;
+    private java.util.Currency currency; // Beloppets valuta; null betyder samma valuta som priset
 
     // Konstruktor för procentuell rabatt utan giltighetstid
     public SimpleDiscount(double discountValue, boolean isPercentage) {
@@ -18,6 +19,18 @@ public class SimpleDiscount extends Discount {
         this.isPercentage = isPercentage;
     }
 
+    // Konstruktor för ett fast belopp i en bestämd valuta, t.ex. 10 kronor av även på varor som prissätts i euro
+    public SimpleDiscount(Money amount) {
+        this(amount, null);
+    }
+
+    public SimpleDiscount(Money amount, Date validityPeriod) {
+        super(validityPeriod);
+        this.discountValue = amount.getAmount();
+        this.isPercentage = false;
+        this.currency = amount.getCurrency();
+    }
+
     @Override
     public double applyDiscount(double price) {
         if (isPercentage) {
@@ -26,4 +39,57 @@ public class SimpleDiscount extends Discount {
             return Math.max(price - discountValue, 0); // Ingen negativt pris
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public double applyDiscount(double price, java.util.Currency priceCurrency) {
+        return applyDiscount(price, priceCurrency, CurrencyRegistry.getExchangeRates());
+    }
+
+    @Override
+    public double applyDiscount(double unitPrice, int quantity, java.util.Currency priceCurrency) {
+        return applyDiscount(unitPrice, quantity, priceCurrency, CurrencyRegistry.getExchangeRates());
+    }
+
+    @Override
+    public double applyDiscount(double price, java.util.Currency priceCurrency, ExchangeRateTable rates) {
+        if (isPercentage || !converts(priceCurrency)) {
+            return applyDiscount(price);
+        }
+        return Math.max(price - amountIn(priceCurrency, rates), 0);
+    }
+
+    @Override
+    public double applyDiscount(double unitPrice, int quantity, java.util.Currency priceCurrency, ExchangeRateTable rates) {
+        if (isPercentage || !converts(priceCurrency)) {
+            return applyDiscount(unitPrice, quantity);
+        }
+        return applyDiscount(unitPrice, priceCurrency, rates) * quantity;
+    }
+
+    // Beloppet uttryckt i priceCurrency, med den gällande växelkursen
+    public double amountIn(java.util.Currency priceCurrency) {
+        return amountIn(priceCurrency, CurrencyRegistry.getExchangeRates());
+    }
+
+    // Beloppet uttryckt i priceCurrency, med kurserna i rates
+    public double amountIn(java.util.Currency priceCurrency, ExchangeRateTable rates) {
+        return converts(priceCurrency) ? discountValue * CurrencyRegistry.getExchangeRate(rates, currency, priceCurrency) : discountValue;
+    }
+
+    private boolean converts(java.util.Currency priceCurrency) {
+        return currency != null && priceCurrency != null && !currency.equals(priceCurrency);
+    }
+
+    public double getDiscountValue() {
+        return discountValue;
+    }
+
+    public boolean isPercentage() {
+        return isPercentage;
+    }
+
+    // Valutan för ett fast belopp, eller null om beloppet gäller i prisets valuta
+    public java.util.Currency getCurrency() {
+        return currency;
+    }
+}
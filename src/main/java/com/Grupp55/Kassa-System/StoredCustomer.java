@@ -0,0 +1,99 @@
+// Vy över en kund i ett CustomerStore. Fälten läses ur lagret vid varje anrop och skrivs tillbaka dit,
+// så vyn själv håller inget kunddata. Flera uppslag på samma rad ger olika vyer som jämförs med equals.
+// Lyssnarna ligger i lagret per rad, så en ändring via en vy når lyssnare som registrerats via en annan.
+final class StoredCustomer extends Customer {
+    private final CustomerStore store;
+    private final int row;
+
+    StoredCustomer(CustomerStore store, int row) {
+        super(null, null, null, null, null);
+        this.store = store;
+        this.row = row;
+    }
+
+    int getRow() {
+        return row;
+    }
+
+    @Override
+    public String getName() {
+        return store.getField(row, CustomerStore.NAME);
+    }
+
+    @Override
+    public void setName(String name) {
+        store.setField(row, CustomerStore.NAME, name);
+    }
+
+    @Override
+    public String getAddress() {
+        return store.getField(row, CustomerStore.ADDRESS);
+    }
+
+    @Override
+    public void setAddress(String address) {
+        store.setField(row, CustomerStore.ADDRESS, address);
+    }
+
+    @Override
+    public String getPersonalId() {
+        return store.getField(row, CustomerStore.PERSONAL_ID);
+    }
+
+    @Override
+    public void setPersonalId(String personalId) {
+        fireKeyChanged(Key.PERSONAL_ID, store.setField(row, CustomerStore.PERSONAL_ID, personalId), personalId);
+    }
+
+    @Override
+    public String getPhoneNumber() {
+        return store.getField(row, CustomerStore.PHONE_NUMBER);
+    }
+
+    @Override
+    public void setPhoneNumber(String phoneNumber) {
+        fireKeyChanged(Key.PHONE_NUMBER, store.setField(row, CustomerStore.PHONE_NUMBER, phoneNumber), phoneNumber);
+    }
+
+    @Override
+    public String getEmail() {
+        return store.getField(row, CustomerStore.EMAIL);
+    }
+
+    @Override
+    public void setEmail(String email) {
+        fireKeyChanged(Key.EMAIL, store.setField(row, CustomerStore.EMAIL, email), email);
+    }
+
+    @Override
+    public void addKeyListener(KeyListener listener) {
+        store.addKeyListener(row, listener);
+    }
+
+    @Override
+    public void removeKeyListener(KeyListener listener) {
+        store.removeKeyListener(row, listener);
+    }
+
+    @Override
+    protected KeyListener[] keyListeners() {
+        return store.keyListeners(row);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StoredCustomer)) {
+            return false;
+        }
+        StoredCustomer other = (StoredCustomer) o;
+        return store == other.store && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(store) + row;
+    }
+}
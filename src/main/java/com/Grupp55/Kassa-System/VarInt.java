@@ -0,0 +1,40 @@
+import java.nio.ByteBuffer;
+
+// Kodning av heltal med variabel längd (7 bitar per byte) för de binära filformaten.
+// Små tal tar en byte; zigzag gör att små negativa tal också blir korta.
+final class VarInt {
+    private VarInt() {
+    }
+
+    static void putUnsigned(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalStateException("Felaktigt kodat tal");
+            }
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static void putSigned(ByteBuffer buffer, long value) {
+        putUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    static long getSigned(ByteBuffer buffer) {
+        long value = getUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -1,5 +1,13 @@
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CustomerAndMembershipTests {
@@ -127,4 +135,253 @@ class CustomerAndMembershipTests {
         // Assert
         assertNull(membership.getMember(), "Membership should allow null customers for testing edge cases");
     }
+
+    @Test
+    void testConcurrentRedemptionNeverOverdraws() throws Exception {
+        // Arrange: åtta kassor tjänar och löser in poäng på samma familjekonto samtidigt
+        Membership membership = new Membership(null);
+        membership.addPoints(1_000);
+        int tills = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(tills);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> redemptions = new ArrayList<>();
+
+        // Act
+        for (int till = 0; till < tills; till++) {
+            redemptions.add(executor.submit(() -> {
+                start.await();
+                int redeemed = 0;
+                for (int i = 0; i < 1_000; i++) {
+                    membership.addPoints(1);
+                    if (membership.redeemPoints(10)) {
+                        redeemed++;
+                    }
+                }
+                return redeemed;
+            }));
+        }
+        start.countDown();
+        int redeemed = 0;
+        for (Future<Integer> redemption : redemptions) {
+            redeemed += redemption.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1_000 + tills * 1_000 - redeemed * 10L, membership.getPoints(), "Every redeemed point should be deducted exactly once");
+        assertTrue(membership.getPoints() >= 0, "Concurrent redemptions should never overdraw the points");
+        assertTrue(redeemed >= 100, "At least the initial points should have been redeemable");
+    }
+
+    @Test
+    void testConcurrentRedemptionSucceedsWhenAffordable() throws Exception {
+        // Arrange: åtta kassor löser in precis de intjänade poängen, många gånger, så att överföringar krockar
+        int tills = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(tills);
+        int declined = 0;
+
+        // Act
+        for (int run = 0; run < 20_000; run++) {
+            Membership membership = new Membership(null);
+            membership.addPoints(tills * 10);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> redemptions = new ArrayList<>();
+            for (int till = 0; till < tills; till++) {
+                redemptions.add(executor.submit(() -> {
+                    start.await();
+                    return membership.redeemPoints(10);
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> redemption : redemptions) {
+                if (!redemption.get(30, TimeUnit.SECONDS)) {
+                    declined++;
+                }
+            }
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, declined, "A redemption the member can afford should never be declined");
+    }
+
+    @Test
+    void testRedemptionInterleavedWithAccrualIsNeverDeclined() throws Exception {
+        // Arrange: varje kassa tjänar in tio poäng och löser sedan in tio, så poängen räcker alltid för kassans inlösen
+        // medan andra kassor samtidigt flyttar över intjänade poäng
+        int tills = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(tills);
+        int declined = 0;
+
+        // Act
+        for (int run = 0; run < 20_000; run++) {
+            Membership membership = new Membership(null);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> redemptions = new ArrayList<>();
+            for (int till = 0; till < tills; till++) {
+                redemptions.add(executor.submit(() -> {
+                    start.await();
+                    membership.addPoints(10);
+                    return membership.redeemPoints(10);
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> redemption : redemptions) {
+                if (!redemption.get(30, TimeUnit.SECONDS)) {
+                    declined++;
+                }
+            }
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, declined, "A redemption right after an accrual should never be declined");
+    }
+
+    @Test
+    void testMembershipRegistryFindsMemberByAnyKey() {
+        // Arrange
+        Customer customer = new Customer("Anna Svensson", "Storgatan 1", "19900101-1234", "070-123 45 67", "Anna.Svensson@Example.com");
+        Membership membership = new Membership(customer);
+        MembershipRegistry registry = new MembershipRegistry(4, 0);
+
+        // Act
+        boolean registered = registry.register(membership);
+        boolean registeredTwice = registry.register(membership);
+
+        // Assert
+        assertTrue(registered, "A new membership should be registered");
+        assertFalse(registeredTwice, "Registering the same membership again should do nothing");
+        assertEquals(1, registry.size(), "The registry should hold one member");
+        assertSame(membership, registry.findByPersonalId("199001011234"), "Personal ID should be found without the dash");
+        assertSame(membership, registry.findByPhoneNumber("+46 70 123 45 67"), "Phone number should be found in international format");
+        assertSame(membership, registry.findByEmail(" anna.svensson@example.com"), "Email should be found regardless of case and spaces");
+        assertNull(registry.findByEmail("okand@example.com"), "An unknown email should not match any member");
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.register(new Membership(new Customer("Kopia", "", "19900101-1234", null, null))),
+                "A personal ID that is already taken should be rejected");
+    }
+
+    @Test
+    void testMembershipRegistryFollowsCustomerKeyChanges() {
+        // Arrange
+        Customer anna = new Customer("Anna Svensson", "Storgatan 1", "19900101-1234", "0701234567", "anna@example.com");
+        Customer erik = new Customer("Erik Svensson", "Storgatan 1", "19920202-5678", "0707654321", "erik@example.com");
+        Membership annasMembership = new Membership(anna);
+        Membership eriksMembership = new Membership(erik);
+        MembershipRegistry registry = new MembershipRegistry();
+        registry.register(annasMembership);
+        registry.register(eriksMembership);
+
+        // Act
+        anna.setEmail("anna.svensson@example.com");
+        anna.setPhoneNumber("0709999999");
+        erik.setEmail("anna.svensson@example.com"); // Redan upptagen av Anna
+        Membership foundByOldEmail = registry.findByEmail("erik@example.com");
+        boolean unregistered = registry.unregister(eriksMembership);
+        erik.setPhoneNumber("0701111111");
+
+        // Assert
+        assertNull(registry.findByEmail("anna@example.com"), "The old email should no longer be indexed");
+        assertSame(annasMembership, registry.findByEmail("anna.svensson@example.com"), "The new email should find the member");
+        assertNull(registry.findByPhoneNumber("0701234567"), "The old phone number should no longer be indexed");
+        assertSame(annasMembership, registry.findByPhoneNumber("070-999 99 99"), "The new phone number should find the member");
+        assertSame(eriksMembership, foundByOldEmail, "A change to a taken key should keep the member under the old key");
+        assertTrue(unregistered, "A registered membership should be removable");
+        assertNull(registry.findByEmail("erik@example.com"), "Unregistering should release the key the member was indexed under");
+        assertNull(registry.findByPersonalId("19920202-5678"), "An unregistered member should not be found");
+        assertNull(registry.findByPhoneNumber("0701111111"), "Changes after unregistering should not be indexed");
+        assertEquals(1, registry.size(), "Only one member should remain");
+    }
+
+    @Test
+    void testCustomerStoreKeepsFieldsInCompactViews() {
+        // Arrange
+        String longAddress = "Långgatan ".repeat(20); // Över 127 byte, så längden tar två byte
+        for (boolean offHeap : new boolean[] {false, true}) {
+            CustomerStore store = new CustomerStore(1, offHeap);
+            Customer first = store.add("Åsa Öberg", longAddress, "19900101-1234", null, "asa@example.com");
+            Customer second = store.add(new Customer("Erik", "Storgatan 2", "19920202-5678", "0707654321", "erik@example.com"));
+
+            // Act
+            first.setPhoneNumber("0701234567");
+            second.setName("Erik Svensson");
+            store.compact();
+            Customer again = store.get(0);
+
+            // Assert
+            assertEquals("Åsa Öberg", again.getName(), "Names with non-ASCII characters should survive UTF-8 storage");
+            assertEquals(longAddress, again.getAddress(), "Long fields should be stored in full");
+            assertEquals("0701234567", again.getPhoneNumber(), "A field set through one view should be visible through another");
+            assertEquals("asa@example.com", again.getEmail(), "Other fields should be kept when one field changes");
+            assertEquals("Erik Svensson", store.get(1).getName(), "The second customer should be updated separately");
+            assertEquals("0707654321", store.get(1).getPhoneNumber(), "The copied customer should keep its fields");
+            assertEquals(first, again, "Views of the same row should be equal");
+            assertEquals(2, store.size(), "The store should hold two customers");
+        }
+    }
+
+    @Test
+    void testCustomerStoreReadsWholeRecordsWhileWriting() throws Exception {
+        // Arrange: läsarna tar inget lås medan skrivaren ändrar fält, växer poolen och kompakterar
+        CustomerStore store = new CustomerStore(1, false);
+        Customer customer = store.add("Anna", "Storgatan 1", "19900101-1234", "0701234567", "anna@example.com");
+        int readers = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        java.util.concurrent.atomic.AtomicBoolean writing = new java.util.concurrent.atomic.AtomicBoolean(true);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            results.add(executor.submit(() -> {
+                int torn = 0;
+                while (writing.get()) {
+                    Customer view = store.get(store.size() - 1);
+                    String name = store.get(0).getName();
+                    if (!name.equals("Anna") && !name.equals("Anna Svensson")) {
+                        torn++;
+                    }
+                    if (!"anna@example.com".equals(store.get(0).getEmail()) || view.getPersonalId() == null) {
+                        torn++;
+                    }
+                }
+                return torn;
+            }));
+        }
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            customer.setName(i % 2 == 0 ? "Anna Svensson" : "Anna");
+            store.add("Kund " + i, "Gatan " + i, "19800101-" + i, null, null);
+            if (i % 5_000 == 0) {
+                store.compact();
+            }
+        }
+        writing.set(false);
+        int torn = 0;
+        for (Future<Integer> result : results) {
+            torn += result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(0, torn, "Lock-free reads should always see a whole record, old or new");
+        assertEquals("Anna", store.get(0).getName(), "The last write should be visible");
+        assertEquals(20_001, store.size(), "Every added customer should be kept");
+    }
+
+    @Test
+    void testCustomerStoreViewsNotifyMembershipRegistry() {
+        // Arrange
+        CustomerStore store = new CustomerStore();
+        Customer customer = store.add("Anna Svensson", "Storgatan 1", "19900101-1234", "0701234567", "anna@example.com");
+        Membership membership = new Membership(customer);
+        MembershipRegistry registry = new MembershipRegistry();
+        registry.register(membership);
+
+        // Act: ändringen görs via en annan vy än den som registrerades
+        store.get(0).setEmail("anna.svensson@example.com");
+
+        // Assert
+        assertNull(registry.findByEmail("anna@example.com"), "The old email should no longer be indexed");
+        assertSame(membership, registry.findByEmail("anna.svensson@example.com"), "Listeners should follow the row, not the view");
+    }
 }
@@ -164,4 +164,265 @@ class DiscountTests {
         assertEquals(108.0, bestPrice1, 0.01, "Watermelon should reflect the best discount");
         assertEquals(150.0, bestPrice2, 0.01, "Cherry should reflect the best discount");
     }
+
+    @Test
+    void testProductTargetedDiscountOnlyAppliesToTarget() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        Product pear = new Product("Pear", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount appleDiscount = new SimpleDiscount(30.0, true);
+        appleDiscount.setTargetProduct(apple);
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(appleDiscount);
+        manager.addDiscount(new SimpleDiscount(10.0, true));
+
+        // Act
+        double applePrice = manager.applyBestDiscount(apple);
+        double pearPrice = manager.applyBestDiscount(pear);
+
+        // Assert
+        assertEquals(70.0, applePrice, 0.01, "Apple should get its targeted 30% discount");
+        assertEquals(90.0, pearPrice, 0.01, "Pear should only get the global 10% discount");
+    }
+
+    @Test
+    void testGroupTargetedDiscountFollowsGroupMembership() {
+        // Arrange
+        Product banana = new Product("Banana", new Money(50.0, java.util.Currency.getInstance("SEK")));
+        ProductGroup fruits = new ProductGroup("Fruits");
+        SimpleDiscount fruitDiscount = new SimpleDiscount(20.0, true);
+        fruitDiscount.setTargetGroup(fruits);
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(fruitDiscount);
+
+        // Act
+        double priceOutsideGroup = manager.applyBestDiscount(banana);
+        fruits.addProduct(banana);
+        double priceInGroup = manager.applyBestDiscount(banana);
+        fruits.removeProduct(banana);
+        double priceAfterRemoval = manager.applyBestDiscount(banana);
+
+        // Assert
+        assertEquals(50.0, priceOutsideGroup, 0.01, "Group discount should not apply before the product joins the group");
+        assertEquals(40.0, priceInGroup, 0.01, "Group discount should apply to group members");
+        assertEquals(50.0, priceAfterRemoval, 0.01, "Group discount should stop applying after removal");
+    }
+
+    @Test
+    void testChainedDiscountsKeepRegistrationOrder() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount tenKronor = new SimpleDiscount(10.0, false); // global
+        SimpleDiscount halfPrice = new SimpleDiscount(50.0, true);
+        halfPrice.setTargetProduct(apple);
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(tenKronor);
+        manager.addDiscount(halfPrice);
+
+        // Act
+        double price = manager.applyAllDiscounts(apple, 100.0);
+
+        // Assert
+        assertEquals(45.0, price, 0.01, "10 SEK off first, then 50%, as the discounts were added");
+    }
+
+    @Test
+    void testCompiledPlanMatchesDiscountObjects() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(19.90, java.util.Currency.getInstance("SEK")));
+        Date tomorrow = new Date(System.currentTimeMillis() + 86_400_000L);
+        Date yesterday = new Date(System.currentTimeMillis() - 86_400_000L);
+        Discount roundDown = new Discount(null) { // Egen rabattyp som planen inte känner till
+            @Override
+            public double applyDiscount(double price) {
+                return Math.floor(price);
+            }
+        };
+        SimpleDiscount overriddenPercentage = new SimpleDiscount(5.0, true) { // Subklass som ändrar beteendet
+            @Override
+            public double applyDiscount(double price) {
+                return price * 0.9;
+            }
+        };
+        java.util.List<Discount> discounts = java.util.List.of(new SimpleDiscount(15.0, true, tomorrow), new SimpleDiscount(2.0, false),
+                new BuyXGetYDiscount(3, 1, tomorrow), new SimpleDiscount(50.0, true, yesterday), roundDown, overriddenPercentage);
+        DiscountManager manager = new DiscountManager();
+        discounts.forEach(manager::addDiscount);
+
+        // Act
+        double planned = manager.applyAllDiscounts(apple, 19.90, 9);
+        double expected = 19.90 * 9;
+        for (Discount discount : discounts) {
+            if (discount.isApplicable(apple)) {
+                expected = discount.applyDiscount(expected / 9, 9);
+            }
+        }
+        double best = manager.applyBestDiscount(apple, 9);
+
+        // Assert
+        assertEquals(expected, planned, "The compiled plan should price exactly like the discount objects");
+        assertEquals(19.90 * 7, best, 1e-9, "Buy 3 get 1 should be the best single discount for nine units");
+    }
+
+    @Test
+    void testStackingPolicyPicksCheapestLegalCombination() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount memberPercentage = new SimpleDiscount(10.0, true);
+        memberPercentage.setStackable(true);
+        memberPercentage.setExclusiveGroup("medlem");
+        SimpleDiscount memberAmount = new SimpleDiscount(15.0, false);
+        memberAmount.setStackable(true);
+        memberAmount.setExclusiveGroup("medlem");
+        SimpleDiscount coupon = new SimpleDiscount(20.0, false);
+        coupon.setStackable(true);
+        coupon.setPriority(10); // Kupongen dras av före medlemsrabatten trots att den lades till senare
+        SimpleDiscount quarterOff = new SimpleDiscount(25.0, true); // Kombineras inte med något
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(memberPercentage);
+        manager.addDiscount(memberAmount);
+        manager.addDiscount(coupon);
+        manager.addDiscount(quarterOff);
+
+        // Act
+        double best = manager.applyBestDiscount(apple, 1);
+        double bestAgain = manager.applyBestDiscount(apple, 1);
+        double chained = manager.applyAllDiscounts(apple, 100.0, 1);
+
+        // Assert
+        assertEquals(65.0, best, 0.001, "Coupon first, then the better of the two member discounts, beats 25% alone");
+        assertEquals(best, bestAgain, "A memoized price should equal the computed one");
+        assertEquals(41.25, chained, 0.001, "applyAllDiscounts should still chain every discount in registration order");
+    }
+
+    @Test
+    void testDiscountPolicyIsFixedOnceAdded() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount coupon = new SimpleDiscount(20.0, false);
+        coupon.setStackable(true);
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(coupon);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> coupon.setStackable(false), "Stacking should not change after the plan copied it");
+        assertThrows(IllegalStateException.class, () -> coupon.setPriority(5), "Priority should not change after the plan copied it");
+        assertThrows(IllegalStateException.class, () -> coupon.setExclusiveGroup("kupong"), "The exclusive group should not change after the plan copied it");
+        assertThrows(IllegalStateException.class, () -> coupon.setTargetProduct(apple), "The target should not change after the index was built");
+        assertTrue(coupon.isStackable(), "A rejected setter should leave the discount unchanged");
+        assertEquals(80.0, manager.applyBestDiscount(apple, 1), 0.001, "The manager should keep pricing with the registered policy");
+    }
+
+    @Test
+    void testStackingPolicyStaysLegalBeyondBranchBudget() {
+        // Arrange: tolv exklusiva grupper med två stapelbara rabatter var är fler förgreningar än lösaren söker igenom
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        DiscountManager manager = new DiscountManager();
+        int groups = 12;
+        for (int group = 0; group < groups; group++) {
+            for (double percentage : new double[] {10.0, 20.0}) {
+                SimpleDiscount discount = new SimpleDiscount(percentage, true);
+                discount.setStackable(true);
+                discount.setExclusiveGroup("grupp " + group);
+                manager.addDiscount(discount);
+            }
+        }
+
+        // Act
+        double best = manager.applyBestDiscount(apple, 1);
+
+        // Assert
+        assertTrue(best >= 100.0 * Math.pow(0.8, groups) - 0.001, "At most one discount per exclusive group should be used");
+        assertTrue(best <= 100.0 * Math.pow(0.9, groups) + 0.001, "The greedy fallback should still take one discount from every group");
+    }
+
+    @Test
+    void testReceiptPricesLikeDiscountManager() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(100.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount memberAmount = new SimpleDiscount(15.0, false);
+        memberAmount.setStackable(true);
+        memberAmount.setExclusiveGroup("medlem");
+        SimpleDiscount coupon = new SimpleDiscount(20.0, false);
+        coupon.setStackable(true);
+        SimpleDiscount quarterOff = new SimpleDiscount(25.0, true);
+        DiscountManager manager = new DiscountManager();
+        Receipt receipt = new Receipt();
+        receipt.addProduct(apple, 3);
+        for (Discount discount : java.util.List.of(memberAmount, coupon, quarterOff, coupon)) {
+            manager.addDiscount(discount);
+            receipt.addDiscount(discount);
+        }
+
+        // Act
+        double expected = manager.applyBestDiscount(apple, 3);
+        double total = receipt.calculateTotal();
+
+        // Assert
+        assertEquals(195.0, expected, 0.001, "Both stackable discounts should beat 25% off");
+        assertEquals(expected, total, 0.001, "The receipt should price the line like DiscountManager");
+        assertEquals(3, receipt.getDiscounts().size(), "The same discount added twice should only count once");
+    }
+
+    @Test
+    void testFixedAmountIsConvertedToProductCurrency() {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        java.util.Currency eur = java.util.Currency.getInstance("EUR");
+        Product croissant = new Product("Croissant", new Money(5.0, eur));
+        Product apple = new Product("Apple", new Money(20.0, sek));
+        SimpleDiscount tenKronor = new SimpleDiscount(new Money(10.0, sek));
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(tenKronor);
+
+        // Act
+        double croissants = manager.applyBestDiscount(croissant, 2);
+        double apples = manager.applyBestDiscount(apple, 2);
+        double direct = tenKronor.applyDiscount(5.0, 2, eur);
+
+        // Assert
+        assertEquals(2 * (5.0 - 10.0 * 0.095), croissants, 1e-9, "10 SEK off should be converted to euro on a euro line");
+        assertEquals(20.0, apples, 1e-9, "10 SEK off should apply as is on a krona line");
+        assertEquals(croissants, direct, "The compiled plan should convert the amount like the discount object");
+    }
+
+    @Test
+    void testFixedAmountUsesRatesPinnedByReceipt() {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        java.util.Currency eur = java.util.Currency.getInstance("EUR");
+        Product croissant = new Product("Croissant", new Money(5.0, eur));
+        ExchangeRateTable before = CurrencyRegistry.getExchangeRates();
+        Receipt receipt = new Receipt(eur);
+        receipt.addDiscount(new SimpleDiscount(new Money(10.0, sek)));
+
+        // Act
+        double total;
+        try {
+            CurrencyRegistry.setExchangeRate(sek, eur, 0.2); // Kursen ändras mitt i köpet
+            receipt.addProduct(croissant, 2);
+            total = receipt.calculateTotal();
+        } finally {
+            CurrencyRegistry.setExchangeRates(before); // Registret delas av alla tester
+        }
+
+        // Assert
+        assertEquals(2 * (5.0 - 10.0 * 0.095), total, 1e-9, "10 SEK off should be converted with the rate pinned when the purchase started");
+    }
+
+    @Test
+    void testLoneUnitGetsNoFreeUnitsFromBuyXGetY() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(30.0, java.util.Currency.getInstance("SEK")));
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(new BuyXGetYDiscount(2, 1, null)); // Köp 2, få 1 gratis
+
+        // Act
+        double single = manager.applyBestDiscount(apple);
+        double three = manager.applyBestDiscount(apple, 3);
+
+        // Assert
+        assertEquals(30.0, single, 1e-9, "A single unit should be charged in full");
+        assertEquals(60.0, three, 1e-9, "Three units should include one free unit");
+    }
 }
@@ -169,4 +169,205 @@ class MoneyAndCurrencyTests {
         });
         assertEquals("For input string: \"/(&%¤)=\"", exception2.getMessage(), "Exception message should indicate invalid input");
     }
+
+    @Test
+    void testMoneyIsStoredInMinorUnits() {
+        // Arrange
+        Money a = new Money(0.1, Currency.getInstance("SEK"));
+        Money b = new Money(0.2, Currency.getInstance("SEK"));
+
+        // Act
+        Money result = a.add(b);
+
+        // Assert
+        assertEquals(30, result.getMinorUnits(), "0.10 SEK + 0.20 SEK should be exactly 30 öre");
+        assertEquals(new Money(0.3, Currency.getInstance("SEK")), result, "Sum should equal 0.30 SEK without floating-point drift");
+    }
+
+    @Test
+    void testMoneyAccumulatorSumsWithoutDrift() {
+        // Arrange
+        MoneyAccumulator accumulator = new MoneyAccumulator(Currency.getInstance("SEK"));
+        Money tenOre = Money.ofMinorUnits(10, Currency.getInstance("SEK"));
+
+        // Act
+        for (int i = 0; i < 1_000; i++) {
+            accumulator.add(tenOre);
+        }
+
+        // Assert
+        assertEquals(10_000, accumulator.getMinorUnits(), "1000 x 0.10 SEK should be exactly 100 SEK");
+        assertEquals(100.0, accumulator.getAmount(), "Accumulated amount should be exactly 100.0");
+        assertEquals(new Money(100.0, Currency.getInstance("SEK")), accumulator.toMoney(), "Accumulator should convert to an equal Money");
+    }
+
+    @Test
+    void testMoneyAccumulatorConvertsOtherCurrencies() {
+        // Arrange
+        MoneyAccumulator accumulator = new MoneyAccumulator(Currency.getInstance("SEK"));
+
+        // Act
+        accumulator.add(new Money(100.0, Currency.getInstance("SEK")));
+        accumulator.add(new Money(10.0, Currency.getInstance("USD")));
+        long sekTotal = accumulator.getMinorUnits();
+        accumulator.reset(Currency.getInstance("USD"));
+        accumulator.addAmount(2.5);
+
+        // Assert
+        assertEquals(19_100, sekTotal, "100 SEK + 10 USD converted to SEK should be 191 SEK");
+        assertEquals(250, accumulator.getMinorUnits(), "Reset should clear the sum and switch currency");
+        assertEquals(Currency.getInstance("USD"), accumulator.getCurrency(), "Currency should be USD after reset");
+    }
+
+    @Test
+    void testExchangeRateTableUpdatesAreCopyOnWrite() {
+        // Arrange
+        ExchangeRateTable original = ExchangeRateTable.empty(3).withRate(0, 1, 0.11);
+
+        // Act
+        ExchangeRateTable updated = original.withRate(0, 1, 0.12);
+
+        // Assert
+        assertEquals(0.11, original.rate(0, 1), "The original snapshot should keep its rate");
+        assertEquals(0.12, updated.rate(0, 1), "The new snapshot should have the updated rate");
+        assertTrue(updated.getVersion() > original.getVersion(), "Every update should get a higher version");
+        assertEquals(1.0, updated.rate(2, 2), "A currency should always convert to itself at rate 1");
+        assertFalse(updated.hasRate(1, 2), "Missing rates should be reported as missing");
+        assertThrows(IllegalArgumentException.class, () -> updated.withRate(0, 1, -1.0), "Negative rates should be rejected");
+    }
+
+    @Test
+    void testMoneyUsesCurrencyRegistryRates() {
+        // Arrange
+        Currency sek = Currency.getInstance("SEK");
+        Currency nok = Currency.getInstance("NOK");
+        ExchangeRateTable before = CurrencyRegistry.getExchangeRates();
+
+        try {
+            // Act
+            CurrencyRegistry.setExchangeRate(sek, nok, 1.02);
+            Money converted = new Money(100.0, sek).convertToCurrency(nok);
+
+            // Assert
+            assertEquals(102.0, converted.getAmount(), 0.001, "Money should pick up rates registered in the shared registry");
+            assertEquals(0, CurrencyRegistry.indexOf(sek), "SEK should keep the index it was registered with first");
+            assertTrue(CurrencyRegistry.indexOf(nok) >= 3, "A new currency should get the next free index");
+            assertThrows(IllegalArgumentException.class, () -> CurrencyRegistry.getExchangeRate(before, sek, nok), "An older snapshot should not see the new rate");
+        } finally {
+            CurrencyRegistry.setExchangeRates(before); // Registret delas av alla tester
+        }
+    }
+
+    @Test
+    void testCrossRatesAreTriangulatedThroughBaseCurrency() throws Exception {
+        // Arrange
+        Currency sek = Currency.getInstance("SEK");
+        String csv = "valuta;kurs\n# kurser per krona\nUSD;0,095\nEUR;0,087\nDKK;0,65\nisk;13,1\n";
+
+        // Act
+        ExchangeRateTable table = CurrencyRegistry.fromBaseRates(sek, ExchangeRateLoader.readCsv(new java.io.StringReader(csv), sek));
+
+        // Assert
+        assertEquals(0.095, CurrencyRegistry.getExchangeRate(table, sek, Currency.getInstance("USD")), 1e-12, "Base rates should be used as given");
+        assertEquals(1 / 0.65, CurrencyRegistry.getExchangeRate(table, Currency.getInstance("DKK"), sek), 1e-12, "Rates into the base should be inverted");
+        assertEquals(0.095 / 0.087, CurrencyRegistry.getExchangeRate(table, Currency.getInstance("EUR"), Currency.getInstance("USD")), 1e-12, "Cross rates should go through the base");
+        assertEquals(0.11, CurrencyRegistry.getExchangeRate(sek, Currency.getInstance("USD")), 1e-12, "Reading a rate file should not change the current rates");
+        assertEquals(13.1, CurrencyRegistry.getExchangeRate(table, sek, Currency.getInstance("ISK")), 1e-12, "A new currency should be readable from the unpublished table");
+        assertEquals(-1, CurrencyRegistry.indexOf(Currency.getInstance("ISK")), "Reading a rate file should not register its currencies");
+    }
+
+    @Test
+    void testEcbRateFileIsReadWithEuroAsBase() throws Exception {
+        // Arrange
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<gesmes:Envelope xmlns:gesmes=\"http://www.gesmes.org/xml/2002-08-01\" xmlns=\"http://www.ecb.int/vocabulary/2002-08-01/eurofxref\">"
+                + "<Cube><Cube time=\"2024-05-02\"><Cube currency=\"USD\" rate=\"1.0702\"/><Cube currency=\"SEK\" rate=\"11.6\"/></Cube></Cube>"
+                + "</gesmes:Envelope>";
+
+        // Act
+        Map<Currency, Double> rates = ExchangeRateLoader.readEcbXml(new java.io.ByteArrayInputStream(xml.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+
+        // Assert
+        assertEquals(2, rates.size(), "Both currencies should be read");
+        assertEquals(11.6, rates.get(Currency.getInstance("SEK")), "SEK rate should be read per euro");
+        assertThrows(java.io.IOException.class, () -> ExchangeRateLoader.readCsv(new java.io.StringReader("USD,-1"), Currency.getInstance("SEK")), "Negative rates should be rejected");
+    }
+
+    @Test
+    void testExchangeRateWatcherReloadsChangedFile(@org.junit.jupiter.api.io.TempDir java.nio.file.Path directory) throws Exception {
+        // Arrange
+        Currency sek = Currency.getInstance("SEK");
+        Currency usd = Currency.getInstance("USD");
+        java.nio.file.Path file = directory.resolve("kurser.csv");
+        java.nio.file.Files.writeString(file, "USD,0.095\n");
+        java.util.concurrent.atomic.AtomicReference<ExchangeRateTable> published = new java.util.concurrent.atomic.AtomicReference<>();
+
+        try (ExchangeRateWatcher watcher = new ExchangeRateWatcher(file, sek, published::set, 50)) {
+            double initialRate = CurrencyRegistry.getExchangeRate(published.get(), sek, usd);
+
+            // Act
+            java.nio.file.Files.writeString(file, "USD,0.1\n");
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (watcher.getReloadCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            java.nio.file.Files.writeString(file, "USD,inte en kurs\n");
+            boolean invalidAccepted = watcher.reload();
+
+            // Assert
+            assertEquals(0.095, initialRate, 1e-12, "Rates should be loaded when the watcher starts");
+            assertEquals(0.1, CurrencyRegistry.getExchangeRate(published.get(), sek, usd), 1e-12, "Changed file should be picked up without a restart");
+            assertFalse(invalidAccepted, "An invalid file should be rejected");
+            assertEquals(0.1, CurrencyRegistry.getExchangeRate(published.get(), sek, usd), 1e-12, "An invalid file should keep the previous rates");
+            assertNotNull(watcher.getLastError(), "The reload error should be reported");
+            assertTrue(watcher.getLastReloadTime() > 0, "Last reload time should be recorded");
+        }
+    }
+
+    @Test
+    void testChangeIntoNotesAndCoinsInMinorUnits() {
+        // Arrange
+        Money sekChange = new Money(1287.50, Currency.getInstance("SEK"));
+        Money eurChange = new Money(0.30, Currency.getInstance("EUR"));
+        DenominationSet sek = DenominationSet.forCurrency(Currency.getInstance("SEK"));
+        DenominationSet eur = DenominationSet.forCurrency(Currency.getInstance("EUR"));
+        int[] counts = new int[16]; // Återanvänds mellan köpen
+
+        // Act
+        long sekRemainder = sekChange.changeInto(counts);
+        Map<Long, Integer> sekCounts = new java.util.HashMap<>();
+        for (int i = 0; i < sek.size(); i++) {
+            sekCounts.put(sek.denomination(i), counts[i]);
+        }
+        long eurRemainder = eurChange.changeInto(counts);
+
+        // Assert
+        assertEquals(50, sekRemainder, "50 öre cannot be given in Swedish cash");
+        assertEquals(java.util.Map.of(100_000L, 1, 50_000L, 0, 20_000L, 1, 10_000L, 0, 5_000L, 1, 2_000L, 1, 1_000L, 1, 500L, 1, 200L, 1, 100L, 0),
+                sekCounts, "1287 SEK should be 1000 + 200 + 50 + 20 + 10 + 5 + 2");
+        assertTrue(sek.isCanonical(), "Swedish notes and coins should be canonical");
+        assertEquals(0, eurRemainder, "0.30 EUR should be given exactly");
+        for (int i = 0; i < eur.size(); i++) {
+            long denomination = eur.denomination(i);
+            assertEquals(denomination == 20 || denomination == 10 ? 1 : 0, counts[i], "0.30 EUR should be one 20 cent and one 10 cent coin");
+        }
+    }
+
+    @Test
+    void testNonCanonicalDenominationsUseOptimalTable() {
+        // Arrange: med 4, 3 och 1 ger största valören först 4 + 1 + 1 för 6, men 3 + 3 är bättre
+        DenominationSet set = DenominationSet.of(Currency.getInstance("SEK"), 1, 3, 4);
+        int[] counts = new int[set.size()];
+
+        // Act
+        long remainder = set.changeInto(6, counts);
+        int[] small = counts.clone();
+        set.changeInto(1_000_006, counts);
+
+        // Assert
+        assertFalse(set.isCanonical(), "4, 3 and 1 should be detected as non-canonical");
+        assertEquals(0, remainder, "6 should be given exactly");
+        assertArrayEquals(new int[] {0, 2, 0}, small, "6 should be two 3s");
+        assertArrayEquals(new int[] {250_000, 2, 0}, counts, "Large amounts should use the largest denomination and the table for the rest");
+    }
 }
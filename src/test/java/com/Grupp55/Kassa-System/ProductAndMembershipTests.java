@@ -143,4 +143,129 @@ class ProductAndMembershipTests {
         assertFalse(redeemed, "Redemption should fail when attempting to redeem more points than available");
         assertEquals(50, membership.getPoints(), "Points should remain unchanged if redemption fails");
     }
+
+    @Test
+    void testProductCatalogLooksUpByBarcode() {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        ProductCatalog catalog = new ProductCatalog();
+        long firstBarcode = 7_310_000_000_000L;
+
+        // Act
+        for (int i = 0; i < 100_000; i++) {
+            catalog.add(firstBarcode + i, i % 2 == 0 ? "Mjölk" : "Bröd", Money.ofMinorUnits(1_000 + i, sek));
+        }
+        Product milk = catalog.lookup(firstBarcode + 42);
+        Product sameMilk = catalog.lookup(firstBarcode + 42);
+        long priceBeforeUpdate = milk.getPrice().getMinorUnits();
+        SimpleDiscount milkOffer = new SimpleDiscount(10.0, true);
+        milkOffer.setTargetProduct(milk);
+        DiscountManager manager = new DiscountManager();
+        manager.addDiscount(milkOffer);
+        Product bread = catalog.lookup(firstBarcode + 7);
+        ProductCatalog updated = catalog.copy();
+        updated.add(firstBarcode + 42, "Mjölk", Money.ofMinorUnits(999, sek));
+        Product updatedMilk = updated.lookup(firstBarcode + 42);
+
+        // Assert
+        assertEquals(100_000, catalog.size(), "All products should be stored");
+        assertEquals("Mjölk", milk.getName(), "Lookup should return the product with the barcode");
+        assertEquals(1_042, priceBeforeUpdate, "Lookup should return the product's price");
+        assertEquals(firstBarcode + 42, milk.getBarcode(), "Product should keep its barcode");
+        assertSame(milk, sameMilk, "Repeated lookups should return the same product");
+        assertSame(catalog.getName(0), catalog.getName(2), "Equal names should share one string");
+        assertEquals(999, updatedMilk.getPrice().getMinorUnits(), "Adding an existing barcode to a copy should update the price");
+        assertEquals(1_042, milk.getPrice().getMinorUnits(), "A product that was already scanned should keep its price");
+        assertSame(milk, catalog.lookup(firstBarcode + 42), "The shared catalog should not change while its copy is updated");
+        assertSame(bread, updated.lookup(firstBarcode + 7), "Unchanged articles should keep their product in the copy");
+        assertEquals(8.991, manager.applyBestDiscount(updatedMilk), 1e-9, "A product-targeted discount should follow the barcode to the repriced product");
+        assertNull(catalog.lookup(firstBarcode - 1), "Unknown barcode should not be found");
+    }
+
+    @Test
+    void testMappedCatalogSnapshotFromCsv(@org.junit.jupiter.api.io.TempDir java.nio.file.Path directory) throws Exception {
+        // Arrange
+        java.nio.file.Path csv = directory.resolve("sortiment.csv");
+        java.nio.file.Path snapshot = directory.resolve("katalog.bin");
+        java.nio.file.Files.writeString(csv, "streckkod,namn,pris,valuta\n"
+                + "7310865004703,Mellanmjölk 1,5 l,18.90,SEK\n"
+                + "7310865004710,Smör,0.29,EUR\n"
+                + "7310865004727,Mellanmjölk 1,5 l,19.90,SEK\n");
+
+        // Act
+        int count = CatalogSnapshotTool.convert(csv, snapshot);
+        try (MappedCatalog catalog = new MappedCatalog(snapshot)) {
+            Product milk = catalog.lookup(7310865004703L);
+            Product butter = catalog.lookup(7310865004710L);
+            Receipt receipt = new Receipt();
+            receipt.addProduct(catalog.lookup(7310865004703L));
+            receipt.addProduct(catalog.lookup(7310865004703L));
+
+            // Assert
+            assertEquals(3, count, "All rows should be converted");
+            assertEquals(3, catalog.size(), "Snapshot should contain all products");
+            assertEquals("Mellanmjölk 1,5 l", milk.getName(), "Name may contain the separator and non-ASCII characters");
+            assertEquals(Money.ofMinorUnits(1890, java.util.Currency.getInstance("SEK")), milk.getPrice(), "Price should be read exactly");
+            assertEquals(Money.ofMinorUnits(29, java.util.Currency.getInstance("EUR")), butter.getPrice(), "Each product should keep its currency");
+            assertEquals(milk, catalog.lookup(7310865004703L), "Views of the same product should be equal");
+            assertEquals(1, receipt.getLines().size(), "Scanning the same barcode twice should give one receipt line");
+            assertEquals(37.80, receipt.calculateTotal(), 0.001, "Receipt should be priced from the mapped catalog");
+            assertNull(catalog.lookup(1L), "Unknown barcode should not be found");
+        }
+    }
+
+    @Test
+    void testGroupDiscountAppliesToMappedCatalogLookups(@org.junit.jupiter.api.io.TempDir java.nio.file.Path directory) throws Exception {
+        // Arrange
+        java.nio.file.Path csv = directory.resolve("sortiment.csv");
+        java.nio.file.Path snapshot = directory.resolve("katalog.bin");
+        java.nio.file.Files.writeString(csv, "streckkod,namn,pris,valuta\n7310865004703,Mellanmjölk,20.00,SEK\n7310865004710,Smör,40.00,SEK\n");
+        CatalogSnapshotTool.convert(csv, snapshot);
+
+        try (MappedCatalog catalog = new MappedCatalog(snapshot)) {
+            ProductGroup dairy = new ProductGroup("Mejeri");
+            dairy.addProduct(catalog.lookup(7310865004703L));
+            SimpleDiscount dairyOffer = new SimpleDiscount(25.0, true);
+            dairyOffer.setTargetGroup(dairy);
+            DiscountManager manager = new DiscountManager();
+            manager.addDiscount(dairyOffer);
+
+            // Act
+            Product scannedMilk = catalog.lookup(7310865004703L); // En ny vy, som när kassan skannar varan
+            double milkPrice = manager.applyBestDiscount(scannedMilk);
+            double butterPrice = manager.applyBestDiscount(catalog.lookup(7310865004710L));
+
+            // Assert
+            assertTrue(scannedMilk.isInGroup(dairy), "A new view should see the group its product was added to");
+            assertTrue(dairy.contains(scannedMilk), "The group and the view should agree on membership");
+            assertEquals(15.0, milkPrice, 1e-9, "The group discount should apply to a freshly scanned product");
+            assertEquals(40.0, butterPrice, 1e-9, "Products outside the group should keep their price");
+        }
+    }
+
+    @Test
+    void testProductGroupKeepsRunningPriceSum() {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        ProductGroup group = new ProductGroup("Frukt");
+        Product[] products = new Product[10_000];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product("Frukt " + i, new Money(0.10, sek));
+            group.addProduct(products[i]);
+        }
+
+        // Act
+        for (int i = 0; i < products.length; i += 2) {
+            group.removeProduct(products[i]);
+        }
+        group.addProduct(products[1]);
+
+        // Assert
+        assertEquals(5_001, group.size(), "Group should count every copy");
+        assertEquals(2, group.getQuantity(products[1]), "Duplicate copies should be counted per product");
+        assertFalse(group.contains(products[0]), "Removed product should no longer be in the group");
+        assertFalse(products[0].isInGroup(group), "Removed product should leave the group");
+        assertEquals(Money.ofMinorUnits(50_010, sek), group.getTotalPrice(), "Running sum should be exact in minor units");
+        assertEquals(450.09, group.calculateGroupDiscount(10.0), 0.001, "Group discount should use the running sum");
+    }
 }
@@ -0,0 +1,478 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptPersistenceTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testJournalAppendsReceiptsToOneSegment() throws IOException {
+        // Arrange
+        Receipt first = receiptWith("Apple", 10.0);
+        Receipt second = receiptWith("Banana", 15.0);
+        Receipt third = receiptWith("Milk", 20.0);
+
+        // Act
+        Path segment;
+        try (ReceiptJournal journal = new ReceiptJournal(directory, "kassa1", 2, 60_000, 1 << 20)) {
+            journal.append(first);
+            journal.append(second);
+            journal.append(third);
+            segment = journal.getCurrentSegment();
+        }
+        List<String> receipts = ReceiptJournal.readSegment(segment);
+
+        // Assert
+        assertEquals(1, countSegments(), "All receipts of the day should go to a single segment");
+        assertEquals(3, receipts.size(), "Segment should contain all appended receipts after close");
+        assertEquals(first.generateReceiptContent(), receipts.get(0), "Stored record should be the rendered receipt");
+        assertTrue(receipts.get(2).contains("Milk"), "Receipts should be stored in append order");
+    }
+
+    @Test
+    void testJournalRollsSegmentOnNewDayAndSize() throws IOException {
+        // Arrange
+        MutableClock clock = new MutableClock(Instant.parse("2024-05-01T10:00:00Z"));
+
+        // Act
+        try (ReceiptJournal journal = new ReceiptJournal(directory, "kassa2", 1, 0, 200, clock)) {
+            journal.append(receiptWith("Apple", 10.0)); // > 200 byte, så segmentet byts direkt efter
+            journal.append(receiptWith("Banana", 15.0));
+            clock.now = Instant.parse("2024-05-02T08:00:00Z");
+            journal.append(receiptWith("Milk", 20.0));
+        }
+
+        // Assert
+        assertTrue(Files.exists(directory.resolve("kvitton-kassa2-20240501-000.journal")), "First segment of the first day should exist");
+        assertTrue(Files.exists(directory.resolve("kvitton-kassa2-20240501-001.journal")), "Full segment should roll over to the next sequence");
+        assertTrue(Files.exists(directory.resolve("kvitton-kassa2-20240502-000.journal")), "A new day should start a new segment");
+    }
+
+    @Test
+    void testJournalContinuesExistingSegmentAfterRestart() throws IOException {
+        // Arrange
+        Path firstSegment;
+        try (ReceiptJournal journal = new ReceiptJournal(directory, "kassa3")) {
+            journal.append(receiptWith("Apple", 10.0));
+            firstSegment = journal.getCurrentSegment();
+        }
+        // Ett strömavbrott mitt i en skrivning lämnar en post med rätt längd men fel innehåll
+        Files.write(firstSegment, new byte[] {0, 0, 0, 4, 1, 2, 3, 4, 'x', 'y', 'z', 'w'}, java.nio.file.StandardOpenOption.APPEND);
+
+        // Act
+        Path segment;
+        try (ReceiptJournal journal = new ReceiptJournal(directory, "kassa3")) {
+            journal.append(receiptWith("Banana", 15.0));
+            segment = journal.getCurrentSegment();
+        }
+        List<String> receipts = ReceiptJournal.readSegment(segment);
+
+        // Assert
+        assertEquals(2, receipts.size(), "Reopened journal should append to the day's segment after dropping the torn record");
+        assertTrue(receipts.get(1).contains("Banana"), "The receipt written after the restart should be readable");
+    }
+
+    @Test
+    void testJournalSyncsPendingReceiptsWhenIdle() throws Exception {
+        // Arrange: stor batch, så att bara tidsgränsen kan få kvittot till disk
+        try (ReceiptJournal journal = new ReceiptJournal(directory, "kassa4", 1_000, 20, 1 << 20)) {
+            journal.append(receiptWith("Apple", 10.0));
+            Path segment = journal.getCurrentSegment();
+
+            // Act
+            long deadline = System.nanoTime() + java.util.concurrent.TimeUnit.SECONDS.toNanos(5);
+            while (ReceiptJournal.readSegment(segment).isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            // Assert
+            assertEquals(1, ReceiptJournal.readSegment(segment).size(), "A pending receipt should be synced after the interval without further appends");
+        }
+    }
+
+    @Test
+    void testArchiveFindsReceiptsByNumberAndDate() throws IOException {
+        // Arrange
+        Path archive = directory.resolve("kvitton.rka");
+        long start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 16)) {
+            for (int i = 0; i < 200; i++) {
+                Receipt receipt = receiptWith("Produkt " + (i % 7), 10.0 + i);
+                receipt.addProduct(new Product("Kaffe", new Money(25.0, java.util.Currency.getInstance("SEK"))), 2);
+                receipt.getDate().setTime(start + i * 3_600_000L); // ett kvitto i timmen
+                writer.append(receipt);
+            }
+        }
+
+        // Act
+        ArchivedReceipt found;
+        List<ArchivedReceipt> secondDay;
+        try (ReceiptArchiveReader reader = new ReceiptArchiveReader(archive)) {
+            found = reader.findByNumber(137);
+            secondDay = reader.findByDateRange(new java.util.Date(start + 86_400_000L), new java.util.Date(start + 2 * 86_400_000L));
+        }
+
+        // Assert
+        assertNotNull(found, "Receipt 137 should be found");
+        assertEquals(start + 136 * 3_600_000L, found.getTimestamp(), "Receipt 137 should have its original timestamp");
+        assertEquals("Produkt 3", found.getProductName(0), "Dictionary-encoded product name should be decoded");
+        assertEquals(2, found.getQuantity(1), "Line quantity should be stored");
+        assertEquals(5_000, found.getLinePrice(1), "Line price should be stored in minor units");
+        assertEquals(19_600, found.getTotalMinorUnits(), "Total should be 146 + 50 SEK");
+        assertEquals(24, secondDay.size(), "Second day should contain 24 hourly receipts");
+        assertEquals(25, secondDay.get(0).getNumber(), "Second day should start with receipt 25");
+    }
+
+    @Test
+    void testArchiveRecoversFromTruncatedTail() throws IOException {
+        // Arrange
+        Path archive = directory.resolve("kvitton.rka");
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 4)) {
+            for (int i = 0; i < 10; i++) {
+                writer.append(receiptWith("Apple", 10.0));
+            }
+        }
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(archive, java.nio.file.StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3); // Simulera att sista kvittot bara skrevs till hälften
+        }
+
+        // Act
+        long next;
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 4)) {
+            next = writer.append(receiptWith("Banana", 15.0));
+        }
+        ArchivedReceipt reread;
+        ArchivedReceipt lost;
+        try (ReceiptArchiveReader reader = new ReceiptArchiveReader(archive)) {
+            reread = reader.findByNumber(next);
+            lost = reader.findByNumber(11);
+        }
+
+        // Assert
+        assertEquals(10, next, "Numbering should continue after the last complete receipt");
+        assertNotNull(reread, "Receipt appended after recovery should be readable");
+        assertEquals("Banana", reread.getProductName(0), "Recovered archive should contain the new receipt");
+        assertNull(lost, "Receipts that were never written should not be found");
+    }
+
+    @Test
+    void testArchiveIgnoresZeroFilledTail() throws IOException {
+        // Arrange
+        Path archive = directory.resolve("kvitton.rka");
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 4)) {
+            for (int i = 0; i < 6; i++) {
+                writer.append(receiptWith("Apple", 10.0));
+            }
+        }
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(archive, java.nio.file.StandardOpenOption.WRITE)) {
+            channel.write(java.nio.ByteBuffer.allocate(64), channel.size()); // Simulera en förlängd fil som aldrig skrevs
+        }
+
+        // Act
+        long next;
+        List<ArchivedReceipt> all = new java.util.ArrayList<>();
+        try (ReceiptArchiveReader reader = new ReceiptArchiveReader(archive)) {
+            reader.forEach(all::add);
+        }
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 4)) {
+            next = writer.append(receiptWith("Banana", 15.0));
+        }
+
+        // Assert
+        assertEquals(6, all.size(), "Zero bytes after the last receipt should not decode as receipts");
+        assertTrue(all.stream().allMatch(r -> r.getCurrency().getCurrencyCode().equals("SEK")), "Only real receipts should be read");
+        assertEquals(7, next, "Numbering should continue after the last real receipt");
+    }
+
+    @Test
+    void testArchiveFindsReceiptsOutOfTimeOrder() throws IOException {
+        // Arrange
+        Path archive = directory.resolve("kvitton.rka");
+        long start = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        long[] minutes = {0, 5, 1, 30, 2, 40, 3, 50, 4, 60};
+        ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 2);
+        try {
+            for (long minute : minutes) {
+                Receipt receipt = receiptWith("Apple", 10.0);
+                receipt.getDate().setTime(start + minute * 60_000L); // köpen startade i en annan ordning än de avslutades
+                writer.appendAndSync(receipt);
+            }
+
+            // Act
+            List<ArchivedReceipt> firstMinutes;
+            try (ReceiptArchiveReader reader = new ReceiptArchiveReader(archive)) {
+                firstMinutes = reader.findByDateRange(new java.util.Date(start), new java.util.Date(start + 5 * 60_000L));
+            }
+
+            // Assert
+            assertEquals(5, firstMinutes.size(), "Every receipt started in the first five minutes should be found");
+            assertEquals(List.of(1L, 3L, 5L, 7L, 9L), firstMinutes.stream().map(ArchivedReceipt::getNumber).toList(), "Receipts should be returned in number order");
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void testAsyncArchiverWritesSnapshotsInOrder() throws Exception {
+        // Arrange
+        java.util.Queue<String> written = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        Receipt receipt = new Receipt();
+        List<java.util.concurrent.CompletableFuture<Void>> futures = new java.util.ArrayList<>();
+
+        // Act
+        try (AsyncReceiptArchiver archiver = new AsyncReceiptArchiver(r -> written.add(r.getLines().iterator().next().getProduct().getName()))) {
+            for (int i = 0; i < 50; i++) {
+                receipt.addProduct(new Product("Produkt " + i, new Money(10.0, java.util.Currency.getInstance("SEK"))));
+                futures.add(archiver.submit(receipt));
+                receipt.endPurchase(); // Kassan fortsätter direkt med nästa kund
+            }
+            java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture[0])).get(5, java.util.concurrent.TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(50, written.size(), "All submitted receipts should be written");
+        assertEquals("Produkt 0", written.peek(), "The sink should see the receipt as it was when submitted");
+        assertEquals("Produkt 49", new java.util.ArrayList<>(written).get(49), "A single worker should keep submission order");
+    }
+
+    @Test
+    void testAsyncArchiverRetriesAndReportsFailures() throws Exception {
+        // Arrange
+        java.util.concurrent.atomic.AtomicInteger attempts = new java.util.concurrent.atomic.AtomicInteger();
+        ReceiptSink flakySink = r -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("Disken är upptagen");
+            }
+        };
+        ReceiptSink brokenSink = r -> {
+            throw new IOException("Disken är full");
+        };
+
+        // Act
+        java.util.concurrent.CompletableFuture<Void> retried;
+        java.util.concurrent.CompletableFuture<Void> failed;
+        try (AsyncReceiptArchiver flaky = new AsyncReceiptArchiver(flakySink, 4, 1, 3, 1, Thread::new);
+             AsyncReceiptArchiver broken = new AsyncReceiptArchiver(brokenSink, 4, 1, 2, 1, Thread::new)) {
+            retried = flaky.submit(receiptWith("Apple", 10.0));
+            failed = broken.submit(receiptWith("Apple", 10.0));
+            retried.get(5, java.util.concurrent.TimeUnit.SECONDS);
+            assertThrows(java.util.concurrent.ExecutionException.class, () -> failed.get(5, java.util.concurrent.TimeUnit.SECONDS));
+            assertEquals(1, broken.getFailedCount(), "Failed receipt should be counted");
+        }
+
+        // Assert
+        assertEquals(3, attempts.get(), "Write should be retried until it succeeds");
+        assertTrue(retried.isDone() && !retried.isCompletedExceptionally(), "Retried write should complete normally");
+    }
+
+    @Test
+    void testAsyncArchiverAppliesBackPressureWhenFull() throws Exception {
+        // Arrange
+        java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        ReceiptSink slowSink = r -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        // Act & Assert
+        try (AsyncReceiptArchiver archiver = new AsyncReceiptArchiver(slowSink, 1, 1, 1, 0, Thread::new)) {
+            archiver.submit(receiptWith("Apple", 10.0)); // tas av skrivtråden och blockerar
+            while (archiver.getQueueSize() > 0) {
+                Thread.onSpinWait();
+            }
+            assertNotNull(archiver.trySubmit(receiptWith("Banana", 15.0), 1, java.util.concurrent.TimeUnit.SECONDS), "Second receipt should fit in the queue");
+            assertNull(archiver.trySubmit(receiptWith("Milk", 20.0), 10, java.util.concurrent.TimeUnit.MILLISECONDS), "A full queue should reject after the timeout");
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testAsyncArchiverSurvivesInterruptedRetry() throws Exception {
+        // Arrange: första kvittot misslyckas och väntar länge på ett nytt försök
+        ReceiptSink sink = r -> {
+            if (r.getLines().iterator().next().getProduct().getName().equals("Apple")) {
+                throw new IOException("Disken är upptagen");
+            }
+        };
+        List<Thread> threads = new java.util.concurrent.CopyOnWriteArrayList<>();
+        java.util.concurrent.ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable);
+            threads.add(thread);
+            return thread;
+        };
+
+        // Act
+        java.util.concurrent.CompletableFuture<Void> interrupted;
+        java.util.concurrent.CompletableFuture<Void> next;
+        try (AsyncReceiptArchiver archiver = new AsyncReceiptArchiver(sink, 4, 1, 3, 60_000, factory)) {
+            interrupted = archiver.submit(receiptWith("Apple", 10.0));
+            next = archiver.submit(receiptWith("Banana", 15.0));
+            while (threads.get(0).getState() != Thread.State.TIMED_WAITING) {
+                Thread.onSpinWait();
+            }
+            threads.get(0).interrupt();
+            next.get(5, java.util.concurrent.TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertThrows(java.util.concurrent.ExecutionException.class, () -> interrupted.get(5, java.util.concurrent.TimeUnit.SECONDS), "Interrupted retry should fail its receipt");
+        assertTrue(next.isDone() && !next.isCompletedExceptionally(), "The worker should keep writing after an interrupted retry");
+    }
+
+    @Test
+    void testPointsLedgerRecoversFromSnapshotAndTail() throws IOException {
+        // Arrange: små segment, så att poängboken byter segment och skriver ögonblicksbilder under testet
+        Customer customer = new Customer("Anna Svensson", "Storgatan 1", "19900101-1234", "0701234567", "anna@example.com");
+        int events = 0;
+        try (PointsLedger ledger = new PointsLedger(directory, 8, 60_000, 256)) {
+            Membership membership = new Membership(customer, ledger);
+            for (int i = 0; i < 200; i++) {
+                membership.addPoints(10);
+                membership.redeemPoints(3);
+                events += 2;
+            }
+            ledger.accrue("19920202-5678", 50);
+            events++;
+        }
+
+        // Act
+        long balance;
+        long otherBalance;
+        long recovered;
+        try (PointsLedger ledger = new PointsLedger(directory, 8, 60_000, 256)) {
+            balance = new Membership(customer, ledger).getPoints();
+            otherBalance = ledger.getBalance("19920202-5678");
+            recovered = ledger.getRecoveredEvents();
+        }
+        long snapshots;
+        try (Stream<Path> files = Files.list(directory)) {
+            snapshots = files.filter(file -> file.toString().endsWith(".snapshot")).count();
+        }
+
+        // Assert
+        assertEquals(200 * 7, balance, "The balance should be restored after a restart");
+        assertEquals(50, otherBalance, "Events for other members should be restored too");
+        assertTrue(recovered < events / 10, "Only the events after the latest snapshot should be replayed, was " + recovered);
+        assertEquals(2, snapshots, "Only the two latest snapshots should be kept");
+    }
+
+    @Test
+    void testPointsLedgerIgnoresTornTail() throws IOException {
+        // Arrange
+        Path segment;
+        try (PointsLedger ledger = new PointsLedger(directory)) {
+            ledger.accrue("19900101-1234", 100);
+            assertThrows(IllegalArgumentException.class, () -> ledger.accrue("19900101-1234", -100), "Accruing negative points should be rejected like redeeming them");
+            assertFalse(ledger.redeem("19900101-1234", 150), "Redeeming more than the balance should fail");
+            ledger.redeem("19900101-1234", 40);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".segment")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] {0, 0, 0, 20, 1, 2}, java.nio.file.StandardOpenOption.APPEND); // Avbruten post
+
+        // Act
+        long balance;
+        try (PointsLedger ledger = new PointsLedger(directory)) {
+            balance = ledger.getBalance("19900101-1234");
+            ledger.accrue("19900101-1234", 5);
+        }
+        List<PointsLedger.Event> events = PointsLedger.readSegment(segment);
+
+        // Assert
+        assertEquals(60, balance, "The torn record should be ignored");
+        assertEquals(3, events.size(), "The torn record should be cut off before new events are written");
+        assertEquals(PointsLedger.REDEEM, events.get(1).getType(), "The redemption should be recorded as its own event");
+        assertEquals(5, events.get(2).getPoints(), "The new event should follow the valid ones");
+    }
+
+    @Test
+    void testPromotionSimulatorRepricesArchivedBaskets() throws Exception {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        Product coffee = new Product("Kaffe", new Money(40.0, sek));
+        Product bun = new Product("Bulle", new Money(25.0, sek));
+        Path archive = directory.resolve("kvitton.rka");
+        Receipt receipt = new Receipt();
+        try (ReceiptArchiveWriter writer = new ReceiptArchiveWriter(archive, 64)) {
+            for (int i = 0; i < 10_000; i++) {
+                receipt.addProduct(coffee);
+                receipt.addProduct(bun, 3);
+                writer.append(receipt);
+                receipt.endPurchase();
+            }
+        }
+        DiscountManager current = new DiscountManager();
+        DiscountManager bunCampaign = new DiscountManager();
+        BuyXGetYDiscount threeForTwo = new BuyXGetYDiscount(2, 1, null);
+        threeForTwo.setTargetProduct(bun);
+        bunCampaign.addDiscount(threeForTwo);
+        PromotionSimulator simulator = new PromotionSimulator(PromotionSimulator.byName(java.util.Map.of("Kaffe", coffee, "Bulle", bun)), sek);
+
+        // Act
+        List<PromotionSimulator.Result> results;
+        try (ReceiptArchiveReader reader = new ReceiptArchiveReader(archive)) {
+            results = simulator.simulate(reader, List.of(current, bunCampaign));
+        }
+
+        // Assert
+        assertEquals(10_000, results.get(0).getBaskets(), "Every archived basket should be repriced");
+        assertEquals(Money.ofMinorUnits(115_000_000, sek), results.get(0).getHistoricalRevenue(), "Historical revenue should be 115 SEK per basket");
+        assertEquals(Money.ofMinorUnits(0, sek), results.get(0).getRevenueDelta(), "Repricing without changes should match history");
+        assertEquals(Money.ofMinorUnits(90_000_000, sek), results.get(1).getRevenue(), "Three for two should make every basket 90 SEK");
+        assertEquals(Money.ofMinorUnits(25_000_000, sek), results.get(1).getDiscountSpend(), "Campaign should cost one bun per basket");
+        assertEquals(Money.ofMinorUnits(-25_000_000, sek), results.get(1).getRevenueDelta(), "Revenue delta should be the campaign cost");
+        assertEquals(0, results.get(1).getUnresolvedLines(), "All products should be resolved");
+    }
+
+    static Receipt receiptWith(String name, double price) {
+        Receipt receipt = new Receipt();
+        receipt.addProduct(new Product(name, new Money(price, java.util.Currency.getInstance("SEK"))));
+        return receipt;
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    static class MutableClock extends Clock {
+        Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -218,4 +218,130 @@ class ReceiptTests {
         assertEquals(9_500.0, total, 0.01, "Total should be correct for large data set with discounts");
         assertTrue((endTime - startTime) < 5000, "Performance issue: calculateTotal should complete in under 5 seconds");
     }
+
+    @Test
+    void testRunningTotalFollowsScansDiscountsAndRemovals() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(10.0, java.util.Currency.getInstance("SEK")));
+        Product milk = new Product("Milk", new Money(20.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount milkDiscount = new SimpleDiscount(25.0, true);
+        milkDiscount.setTargetProduct(milk);
+        Receipt receipt = new Receipt();
+
+        // Act & Assert
+        receipt.addProduct(apple);
+        receipt.addProduct(milk);
+        receipt.addProduct(milk);
+        assertEquals(50.0, receipt.calculateTotal(), 0.001, "Total should be updated on every scan");
+
+        receipt.addDiscount(milkDiscount);
+        assertEquals(40.0, receipt.calculateTotal(), 0.001, "Adding a discount should reprice the lines it applies to");
+
+        receipt.removeProduct(milk);
+        assertEquals(25.0, receipt.calculateTotal(), 0.001, "Removing a line should subtract its discounted price");
+
+        receipt.addProduct(milk);
+        receipt.recalculate();
+        assertEquals(40.0, receipt.calculateTotal(), 0.001, "Recalculating should give the same total as the incremental updates");
+    }
+
+    @Test
+    void testQuantityLinesAndBuyXGetYPerBasket() {
+        // Arrange
+        Product coffee = new Product("Coffee", new Money(30.0, java.util.Currency.getInstance("SEK")));
+        Receipt receipt = new Receipt();
+        receipt.addDiscount(new BuyXGetYDiscount(2, 1, null)); // Köp 2, få 1 gratis
+
+        // Act
+        receipt.addProduct(coffee, 6);
+        receipt.addProduct(coffee);
+        double totalForSeven = receipt.calculateTotal();
+        receipt.removeProduct(coffee);
+        double totalForSix = receipt.calculateTotal();
+
+        // Assert
+        assertEquals(1, receipt.getLines().size(), "Same product should share one receipt line");
+        assertEquals(6, receipt.getQuantity(coffee), "Quantity should be decremented by removeProduct");
+        assertEquals(6, receipt.getProducts().size(), "getProducts should list one entry per unit");
+        assertEquals(150.0, totalForSeven, 0.001, "7 units with buy 2 get 1 should pay for 5");
+        assertEquals(120.0, totalForSix, 0.001, "6 units with buy 2 get 1 should pay for 4");
+    }
+
+    @Test
+    void testLargeQuantityOnSingleLine() {
+        // Arrange
+        Product water = new Product("Water", new Money(9.95, java.util.Currency.getInstance("SEK")));
+        Receipt receipt = new Receipt();
+
+        // Act
+        receipt.addProduct(water, 1_000);
+
+        // Assert
+        assertEquals(1, receipt.getLines().size(), "A pallet of one item should be a single line");
+        assertEquals(1_000, receipt.getItemCount(), "Item count should include the full quantity");
+        assertEquals(9_950.0, receipt.calculateTotal(), 0.001, "Total should be exact for large quantities");
+    }
+
+    @Test
+    void testRenderedLinesMatchFixedWidthLayout() {
+        // Arrange
+        Product apple = new Product("Apple", new Money(10.0, java.util.Currency.getInstance("SEK")));
+        Product milk = new Product("Mjölk", new Money(20.0, java.util.Currency.getInstance("SEK")));
+        SimpleDiscount milkDiscount = new SimpleDiscount(25.0, true);
+        milkDiscount.setTargetProduct(milk);
+        Receipt receipt = new Receipt();
+        receipt.addProduct(apple);
+        receipt.addProduct(milk, 2);
+        receipt.addDiscount(milkDiscount);
+
+        // Act
+        String content = receipt.generateReceiptContent();
+
+        // Assert
+        assertTrue(content.contains(String.format(java.util.Locale.ROOT, "%-20s %-10.2f %-10s\n", "Apple", 10.0, "-")), "Undiscounted line should be padded like the old format string");
+        assertTrue(content.contains(String.format(java.util.Locale.ROOT, "%-20s %-10.2f %-10s\n", "Mjölk x2", 30.0, "-10.00")), "Discounted line should show quantity, price and discount");
+        assertTrue(content.contains("Totalt: 40.00\n"), "Total should be rendered with two decimals");
+        assertSame(content, receipt.generateReceiptContent(), "Unchanged receipt should reuse the rendered content");
+    }
+
+    @Test
+    void testRenderToByteBufferWritesUtf8() throws IOException {
+        // Arrange
+        Receipt receipt = new Receipt();
+        receipt.addProduct(new Product("Räksmörgås", new Money(89.0, java.util.Currency.getInstance("SEK"))));
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(1024);
+        StringBuilder text = new StringBuilder();
+
+        // Act
+        receipt.writeTo(buffer);
+        receipt.writeTo(text);
+
+        // Assert
+        byte[] expected = text.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        assertArrayEquals(expected, java.util.Arrays.copyOf(buffer.array(), buffer.position()), "ByteBuffer output should be the UTF-8 encoding of the text output");
+    }
+
+    @Test
+    void testMultiCurrencyTotalConvertsEachCurrencyOnce() {
+        // Arrange
+        java.util.Currency sek = java.util.Currency.getInstance("SEK");
+        java.util.Currency usd = java.util.Currency.getInstance("USD");
+        java.util.Currency eur = java.util.Currency.getInstance("EUR");
+        Receipt receipt = new Receipt(sek);
+        receipt.setDisplayCurrencies(eur);
+
+        // Act
+        receipt.addProduct(new Product("Kaffe", new Money(100.0, sek)));
+        receipt.addProduct(new Product("Souvenir", new Money(10.0, usd)), 2);
+        receipt.addProduct(new Product("Choklad", new Money(5.0, eur)));
+        String content = receipt.generateReceiptContent();
+
+        // Assert
+        assertEquals(334.50, receipt.calculateTotal(), 0.001, "100 SEK + 20 USD + 5 EUR should be 334.50 SEK");
+        assertEquals(new Money(31.70, eur), receipt.calculateTotal(eur), "Each currency bucket should be converted to EUR once");
+        assertEquals(java.util.List.of(new Money(334.50, sek), new Money(31.70, eur)), receipt.calculateTotals(sek, eur), "The same total should be available in several currencies");
+        assertEquals(2000, new java.util.ArrayList<>(receipt.getLines()).get(1).getMinorUnits(), "Line price should stay in the product's own currency");
+        assertTrue(content.contains("20.00 USD"), "Foreign line should be rendered with its currency code");
+        assertTrue(content.contains("Totalt (EUR): 31.70\n"), "Display currency total should be rendered");
+    }
 }